@@ -0,0 +1,189 @@
+package com.avatarstore.bench;
+
+import com.avatarstore.config.ObjectMapperConfig;
+import com.avatarstore.model.Avatar;
+import com.avatarstore.model.AvatarVersion;
+import com.avatarstore.model.AvatarVersionPair;
+import com.avatarstore.service.UpstreamGuard;
+import com.avatarstore.service.UpstreamMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic catalog data shaped like production rows (field set, string lengths,
+ * timestamps), and helpers for wiring services without a Spring context.
+ */
+public final class Fixtures {
+
+    public static final UUID USER_ID = UUID.fromString("6f1c2b9e-3d4a-4c5b-9e8f-0a1b2c3d4e5f");
+
+    private static final String[] CATEGORIES = {"anime", "furry", "realistic", "chibi", "robot", "fantasy"};
+    private static final String[] PLATFORMS = {"pc", "quest", "cross"};
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private Fixtures() {}
+
+    /** The application's ObjectMapper configuration. */
+    public static ObjectMapper objectMapper() {
+        return new ObjectMapperConfig().objectMapper();
+    }
+
+    public static List<Map<String, Object>> avatarRows(int count) {
+        Random random = new Random(42);
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            rows.add(avatarRow(i, random));
+        }
+        return rows;
+    }
+
+    public static List<Map<String, Object>> versionRows(int count) {
+        Random random = new Random(43);
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            rows.add(versionRow(1000 + i, 1 + (i - 1) / 3, random));
+        }
+        return rows;
+    }
+
+    /** purchases rows with the embedded avatars/avatar_versions objects the PostgREST join returns. */
+    public static List<Map<String, Object>> purchasedItemRows(int count) {
+        Random random = new Random(44);
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("created_at", EPOCH.plusHours(i).toString());
+            row.put("avatar_id", i);
+            row.put("avatar_version_id", 1000 + i);
+            row.put("stripe_session_id", "cs_live_" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+            Map<String, Object> avatar = new LinkedHashMap<>();
+            avatar.put("id", i);
+            avatar.put("name", "Avatar " + i);
+            avatar.put("slug", "avatar-" + i);
+            avatar.put("thumbnail_url", "https://cdn.example.com/avatars/" + i + "/thumb.webp");
+            avatar.put("poster_url", "https://cdn.example.com/avatars/" + i + "/poster.webp");
+            row.put("avatars", avatar);
+            Map<String, Object> version = versionRow(1000 + i, i, random);
+            version.keySet().retainAll(List.of("id", "name", "price", "description",
+                    "blob_container_name", "blob_file_path", "blob_file_name"));
+            row.put("avatar_versions", version);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    public static byte[] json(Object value) {
+        try {
+            return objectMapper().writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Version/avatar pairs as resolved for a checkout of the given number of items. */
+    public static List<AvatarVersionPair> checkoutItems(int count) {
+        ObjectMapper mapper = objectMapper();
+        List<Map<String, Object>> avatars = avatarRows(count);
+        List<Map<String, Object>> versions = versionRows(count);
+        List<AvatarVersionPair> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new AvatarVersionPair(mapper.convertValue(avatars.get(i), Avatar.class),
+                    mapper.convertValue(versions.get(i), AvatarVersion.class)));
+        }
+        return items;
+    }
+
+    /** An UpstreamGuard with the application's default bulkhead and circuit breaker settings. */
+    public static UpstreamGuard upstreamGuard(MeterRegistry meterRegistry) {
+        UpstreamGuard guard = new UpstreamGuard(new UpstreamMetrics(meterRegistry), meterRegistry, new StandardEnvironment());
+        setField(guard, "bulkheadEnabled", true);
+        setField(guard, "defaultMaxConcurrent", 50);
+        setField(guard, "defaultMaxWait", Duration.ofSeconds(1));
+        setField(guard, "circuitBreakerEnabled", true);
+        setField(guard, "windowSize", 20);
+        setField(guard, "minimumCalls", 10);
+        setField(guard, "failureRateThreshold", 50);
+        setField(guard, "slowCallDuration", Duration.ofSeconds(5));
+        setField(guard, "openDuration", Duration.ofSeconds(30));
+        setField(guard, "halfOpenProbes", 3);
+        guard.init();
+        return guard;
+    }
+
+    /** Sets a (typically @Value-injected) field, for wiring beans without Spring. */
+    public static void setField(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + target.getClass().getSimpleName() + "." + name, e);
+        }
+    }
+
+    private static Map<String, Object> avatarRow(int id, Random random) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", "Avatar " + id);
+        row.put("slug", "avatar-" + id);
+        row.put("poster_url", "https://cdn.example.com/avatars/" + id + "/poster.webp");
+        row.put("thumbnail_url", "https://cdn.example.com/avatars/" + id + "/thumb.webp");
+        row.put("description", text(random, 60));
+        row.put("short_description", text(random, 12));
+        row.put("is_active", random.nextInt(10) != 0);
+        row.put("is_featured", random.nextInt(8) == 0);
+        row.put("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        row.put("platform", PLATFORMS[random.nextInt(PLATFORMS.length)]);
+        row.put("created_at", EPOCH.plusDays(id).toString());
+        row.put("updated_at", EPOCH.plusDays(id).plusHours(random.nextInt(5000)).toString());
+        return row;
+    }
+
+    private static Map<String, Object> versionRow(long id, long avatarId, Random random) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("avatar_id", avatarId);
+        row.put("name", random.nextBoolean() ? "PC" : "Quest");
+        row.put("price", BigDecimal.valueOf(499 + random.nextInt(4000), 2));
+        row.put("description", text(random, 25));
+        row.put("blob_container_name", "avatars");
+        row.put("blob_file_path", "versions/" + avatarId + "/" + id + ".unitypackage");
+        row.put("blob_file_name", "avatar-" + avatarId + "-v" + id + ".unitypackage");
+        row.put("poly_count", 20_000 + random.nextInt(130_000));
+        row.put("mat_count", 1 + random.nextInt(12));
+        row.put("mesh_count", 1 + random.nextInt(8));
+        row.put("texture_memory", (20 + random.nextInt(200)) + " MB");
+        row.put("download_size", (15 + random.nextInt(150)) + " MB");
+        row.put("is_default", id % 3 == 1);
+        row.put("sort_order", (int) (id % 3));
+        row.put("created_at", EPOCH.plusDays(avatarId).toString());
+        return row;
+    }
+
+    private static String text(Random random, int words) {
+        String[] vocabulary = {"fully", "rigged", "avatar", "with", "custom", "shaders", "physbones",
+                "toggles", "outfit", "expressions", "optimized", "for", "quest", "and", "pc", "includes",
+                "textures", "blendshapes", "gestures", "unity", "ready", "hand-painted", "dynamic", "hair"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return sb.toString();
+    }
+}
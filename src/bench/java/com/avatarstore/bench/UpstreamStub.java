@@ -0,0 +1,84 @@
+package com.avatarstore.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for Supabase (PostgREST) and Stripe, so benchmarks that include the
+ * HTTP round trip measure this code and a loopback socket rather than a remote service.
+ * GETs return the body registered for the path; POSTs drain the request and return the
+ * registered body (or 201 with no body).
+ */
+public final class UpstreamStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    private UpstreamStub(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static UpstreamStub start() throws IOException {
+        // headers and body go out in separate writes; without TCP_NODELAY every response waits
+        // out the client's delayed ACK (~40ms) and the round trip dwarfs what is being measured
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(r, "upstream-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        UpstreamStub stub = new UpstreamStub(server, executor);
+        server.createContext("/", stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    /** Serves the given JSON for every request whose path (without query) equals path. */
+    public UpstreamStub respond(String path, byte[] json) {
+        bodies.put(path, json);
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            byte[] body = bodies.get(exchange.getRequestURI().getPath());
+            if (body == null) {
+                boolean post = "POST".equals(exchange.getRequestMethod());
+                exchange.sendResponseHeaders(post ? 201 : 404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,87 @@
+package com.avatarstore.config;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.avatarstore.bench.Fixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SupabaseJwtHelper}: a repeat request from a known session (verified-token cache hit)
+ * versus a token seen for the first time (full HS256 verification).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private static final String SECRET = "bench-jwt-secret-at-least-32-bytes-long";
+    private static final int DISTINCT_TOKENS = 4096;
+
+    private SupabaseJwtHelper cachingHelper;
+    private SupabaseJwtHelper nonCachingHelper;
+    private String token;
+    private String authorization;
+    private String[] distinctTokens;
+    private int next;
+
+    @Setup
+    public void setup() {
+        cachingHelper = helper(10_000);
+        // a one-entry cache cycled through more tokens than it holds never hits
+        nonCachingHelper = helper(1);
+        Algorithm algorithm = Algorithm.HMAC256(SECRET);
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+        token = JWT.create().withSubject(Fixtures.USER_ID.toString()).withIssuer("supabase")
+                .withExpiresAt(expiresAt).sign(algorithm);
+        authorization = "Bearer " + token;
+        distinctTokens = new String[DISTINCT_TOKENS];
+        for (int i = 0; i < DISTINCT_TOKENS; i++) {
+            distinctTokens[i] = JWT.create().withSubject(UUID.randomUUID().toString()).withIssuer("supabase")
+                    .withClaim("session_id", i).withExpiresAt(expiresAt).sign(algorithm);
+        }
+    }
+
+    @Benchmark
+    public Optional<UUID> cachedToken() {
+        return cachingHelper.getUserIdFromToken(token);
+    }
+
+    @Benchmark
+    public Optional<UUID> cachedAuthorizationHeader() {
+        return cachingHelper.getUserIdFromAuthorization(authorization);
+    }
+
+    @Benchmark
+    public Optional<UUID> uncachedToken() {
+        String next = distinctTokens[this.next++ & (DISTINCT_TOKENS - 1)];
+        return nonCachingHelper.getUserIdFromToken(next);
+    }
+
+    private static SupabaseJwtHelper helper(long cacheSize) {
+        SupabaseJwtHelper helper = new SupabaseJwtHelper(new SimpleMeterRegistry());
+        Fixtures.setField(helper, "jwtSecret", SECRET);
+        Fixtures.setField(helper, "cacheSize", cacheSize);
+        Fixtures.setField(helper, "cacheMaxTtl", Duration.ofMinutes(10));
+        helper.init();
+        return helper;
+    }
+}
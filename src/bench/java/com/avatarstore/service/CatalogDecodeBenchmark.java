@@ -0,0 +1,109 @@
+package com.avatarstore.service;
+
+import com.avatarstore.bench.Fixtures;
+import com.avatarstore.bench.UpstreamStub;
+import com.avatarstore.dto.PurchasedItem;
+import com.avatarstore.model.Avatar;
+import com.avatarstore.model.AvatarVersion;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson decoding of avatars, avatar_versions and purchases (with embedded joins) at catalog
+ * sizes from a single page to a large store: from bytes already in memory, and end to end
+ * through {@link PostgrestClient} against the local upstream stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogDecodeBenchmark {
+
+    @Param({"50", "500", "5000"})
+    private int rows;
+
+    private ObjectReader avatarsReader;
+    private ObjectReader versionsReader;
+    private ObjectReader purchasesReader;
+    private byte[] avatarsJson;
+    private byte[] versionsJson;
+    private byte[] purchasesJson;
+
+    private UpstreamStub upstream;
+    private PostgrestClient postgrestClient;
+    private HttpHeaders headers;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = Fixtures.objectMapper();
+        avatarsReader = objectMapper.readerFor(new TypeReference<List<Avatar>>() {});
+        versionsReader = objectMapper.readerFor(new TypeReference<List<AvatarVersion>>() {});
+        purchasesReader = objectMapper.readerFor(new TypeReference<List<PurchasedItem>>() {});
+        avatarsJson = Fixtures.json(Fixtures.avatarRows(rows));
+        versionsJson = Fixtures.json(Fixtures.versionRows(rows));
+        purchasesJson = Fixtures.json(Fixtures.purchasedItemRows(rows));
+
+        upstream = UpstreamStub.start()
+                .respond("/rest/v1/avatars", avatarsJson)
+                .respond("/rest/v1/avatar_versions", versionsJson)
+                .respond("/rest/v1/purchases", purchasesJson);
+        RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        postgrestClient = new PostgrestClient(restTemplate, objectMapper);
+        headers = new HttpHeaders();
+        headers.set("apikey", "bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public List<Avatar> decodeAvatars() throws IOException {
+        return avatarsReader.readValue(avatarsJson);
+    }
+
+    @Benchmark
+    public List<AvatarVersion> decodeVersions() throws IOException {
+        return versionsReader.readValue(versionsJson);
+    }
+
+    @Benchmark
+    public List<PurchasedItem> decodePurchasedItems() throws IOException {
+        return purchasesReader.readValue(purchasesJson);
+    }
+
+    @Benchmark
+    public List<Avatar> fetchAvatars() {
+        return postgrestClient.getList(upstream.baseUrl() + "/rest/v1/avatars?order=id.asc", headers, Avatar.class);
+    }
+
+    @Benchmark
+    public List<PurchasedItem> fetchPurchasedItems() {
+        return postgrestClient.getList(upstream.baseUrl() + "/rest/v1/purchases?order=created_at.desc",
+                headers, PurchasedItem.class);
+    }
+}
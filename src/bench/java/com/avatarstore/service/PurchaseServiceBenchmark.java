@@ -0,0 +1,81 @@
+package com.avatarstore.service;
+
+import com.avatarstore.bench.Fixtures;
+import com.avatarstore.bench.UpstreamStub;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * {@link PurchaseService#recordPurchases}: building the bulk-insert payload on its own, and the
+ * whole call (payload, headers, POST) against the local upstream stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PurchaseServiceBenchmark {
+
+    private static final String SESSION_ID = "cs_live_a1B2c3D4e5F6g7H8i9J0kLmNoPqRsTuVwXyZ0123456789";
+
+    /** Versions per checkout. */
+    @Param({"1", "5", "25"})
+    private int items;
+
+    private List<Long> avatarIds;
+    private List<Long> versionIds;
+    private UpstreamStub upstream;
+    private PurchaseService purchaseService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        avatarIds = LongStream.rangeClosed(1, items).boxed().toList();
+        versionIds = LongStream.rangeClosed(1001, 1000 + items).boxed().toList();
+
+        upstream = UpstreamStub.start();
+        RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        PostgrestClient postgrestClient = new PostgrestClient(restTemplate, Fixtures.objectMapper());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        purchaseService = new PurchaseService(restTemplate, postgrestClient, meterRegistry,
+                new UpstreamFanOut(new StandardEnvironment()), Fixtures.upstreamGuard(meterRegistry));
+        Fixtures.setField(purchaseService, "supabaseUrl", upstream.baseUrl());
+        Fixtures.setField(purchaseService, "serviceRoleKey", "bench-service-role-key");
+        Fixtures.setField(purchaseService, "ownershipCacheEnabled", false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public String buildPayload() {
+        return PurchaseService.purchasesPayload(Fixtures.USER_ID, avatarIds, versionIds, SESSION_ID);
+    }
+
+    @Benchmark
+    public boolean recordPurchases() {
+        return purchaseService.recordPurchases(Fixtures.USER_ID, avatarIds, versionIds, SESSION_ID);
+    }
+}
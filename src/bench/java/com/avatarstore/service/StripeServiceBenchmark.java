@@ -0,0 +1,80 @@
+package com.avatarstore.service;
+
+import com.avatarstore.bench.Fixtures;
+import com.avatarstore.bench.UpstreamStub;
+import com.avatarstore.model.AvatarVersionPair;
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.checkout.Session;
+import com.stripe.param.checkout.SessionCreateParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StripeService#createCheckoutSession}: building the session parameters on its own, and
+ * the whole call (parameters, form encoding, POST, response parsing) against a local stand-in
+ * for the Stripe API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripeServiceBenchmark {
+
+    private static final byte[] SESSION_JSON = ("{\"id\":\"cs_test_bench\",\"object\":\"checkout.session\","
+            + "\"mode\":\"payment\",\"status\":\"open\",\"url\":\"https://checkout.stripe.com/c/pay/cs_test_bench\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    /** Versions per checkout. */
+    @Param({"1", "5", "25"})
+    private int items;
+
+    private List<AvatarVersionPair> checkoutItems;
+    private UpstreamStub upstream;
+    private StripeService stripeService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        checkoutItems = Fixtures.checkoutItems(items);
+        upstream = UpstreamStub.start().respond("/v1/checkout/sessions", SESSION_JSON);
+        Stripe.apiKey = "sk_test_bench";
+        Stripe.overrideApiBase(upstream.baseUrl());
+        stripeService = new StripeService(Fixtures.upstreamGuard(new SimpleMeterRegistry()));
+        Fixtures.setField(stripeService, "successUrl", "https://store.example.com/checkout/success?session_id={CHECKOUT_SESSION_ID}");
+        Fixtures.setField(stripeService, "cancelUrl", "https://store.example.com/checkout/cancel");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        upstream.close();
+    }
+
+    @Benchmark
+    public SessionCreateParams buildParams() {
+        return stripeService.buildCheckoutParams(checkoutItems, Fixtures.USER_ID);
+    }
+
+    @Benchmark
+    public Session createCheckoutSession() throws StripeException {
+        return stripeService.createCheckoutSession(checkoutItems, Fixtures.USER_ID);
+    }
+}
@@ -0,0 +1,110 @@
+package com.avatarstore.loadtest;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic store data for the stand-in: avatars 1..n with VERSIONS_PER_AVATAR versions each
+ * (version ids 1..n*VERSIONS_PER_AVATAR, avatar a owning ids (a-1)*3+1 to a*3), shaped like
+ * production rows, plus purchase rows for seeding ownership.
+ */
+final class Catalog {
+
+    static final int VERSIONS_PER_AVATAR = 3;
+
+    private static final String[] CATEGORIES = {"anime", "furry", "realistic", "chibi", "robot", "fantasy"};
+    private static final String[] PLATFORMS = {"pc", "quest", "cross"};
+    private static final String[] VOCABULARY = {"fully", "rigged", "avatar", "with", "custom", "shaders",
+            "physbones", "toggles", "outfit", "expressions", "optimized", "for", "quest", "and", "pc",
+            "includes", "textures", "blendshapes", "gestures", "unity", "ready", "hand-painted", "dynamic", "hair"};
+    private static final OffsetDateTime EPOCH = OffsetDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private Catalog() {}
+
+    static void seed(PostgrestTables tables, int avatars) {
+        Random random = new Random(42);
+        List<Map<String, Object>> avatarRows = new ArrayList<>(avatars);
+        List<Map<String, Object>> versionRows = new ArrayList<>(avatars * VERSIONS_PER_AVATAR);
+        for (long a = 1; a <= avatars; a++) {
+            avatarRows.add(avatar(a, random));
+            for (int k = 0; k < VERSIONS_PER_AVATAR; k++) {
+                versionRows.add(version(firstVersionId(a) + k, a, k, random));
+            }
+        }
+        tables.seed("avatars", avatarRows);
+        tables.seed("avatar_versions", versionRows);
+    }
+
+    static long firstVersionId(long avatarId) {
+        return (avatarId - 1) * VERSIONS_PER_AVATAR + 1;
+    }
+
+    static long avatarIdOf(long versionId) {
+        return (versionId - 1) / VERSIONS_PER_AVATAR + 1;
+    }
+
+    /** A purchases row as recordPurchases would insert it (id and created_at assigned on insert). */
+    static Map<String, Object> purchase(UUID userId, long versionId, String sessionId) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("user_id", userId.toString());
+        row.put("avatar_id", avatarIdOf(versionId));
+        row.put("avatar_version_id", versionId);
+        row.put("stripe_session_id", sessionId);
+        return row;
+    }
+
+    private static Map<String, Object> avatar(long id, Random random) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", "Avatar " + id);
+        row.put("slug", "avatar-" + id);
+        row.put("poster_url", "https://cdn.example.com/avatars/" + id + "/poster.webp");
+        row.put("thumbnail_url", "https://cdn.example.com/avatars/" + id + "/thumb.webp");
+        row.put("description", text(random, 60));
+        row.put("short_description", text(random, 12));
+        row.put("is_active", random.nextInt(10) != 0);
+        row.put("is_featured", random.nextInt(8) == 0);
+        row.put("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        row.put("platform", PLATFORMS[random.nextInt(PLATFORMS.length)]);
+        row.put("created_at", EPOCH.plusDays(id).toString());
+        row.put("updated_at", EPOCH.plusDays(id).plusHours(random.nextInt(5000)).toString());
+        return row;
+    }
+
+    private static Map<String, Object> version(long id, long avatarId, int index, Random random) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("avatar_id", avatarId);
+        row.put("name", index == 0 ? "PC" : index == 1 ? "Quest" : "Cross-platform");
+        row.put("price", BigDecimal.valueOf(499 + random.nextInt(4000), 2));
+        row.put("description", text(random, 25));
+        row.put("blob_container_name", "avatars");
+        row.put("blob_file_path", "versions/" + avatarId + "/" + id + ".unitypackage");
+        row.put("blob_file_name", "avatar-" + avatarId + "-v" + id + ".unitypackage");
+        row.put("poly_count", 20_000 + random.nextInt(130_000));
+        row.put("mat_count", 1 + random.nextInt(12));
+        row.put("mesh_count", 1 + random.nextInt(8));
+        row.put("texture_memory", (20 + random.nextInt(200)) + " MB");
+        row.put("download_size", (15 + random.nextInt(150)) + " MB");
+        row.put("is_default", index == 0);
+        row.put("sort_order", index);
+        row.put("created_at", EPOCH.plusDays(avatarId).toString());
+        return row;
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.avatarstore.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and failure injection for one stand-in dependency: every request waits latency plus a
+ * uniformly random share of jitter, then fails with the given probability.
+ */
+public record Faults(Duration latency, Duration jitter, double failureRate) {
+
+    public static final Faults NONE = new Faults(Duration.ZERO, Duration.ZERO, 0);
+
+    public Faults {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("failure rate must be between 0 and 1: " + failureRate);
+        }
+    }
+
+    /** Sleeps for the injected latency; returns true if this request should fail. */
+    boolean apply() {
+        long nanos = latency.toNanos();
+        if (!jitter.isZero()) {
+            nanos += ThreadLocalRandom.current().nextLong(jitter.toNanos() + 1);
+        }
+        if (nanos > 0) {
+            try {
+                Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    @Override
+    public String toString() {
+        return latency.toMillis() + "ms+" + jitter.toMillis() + "ms jitter, " + (failureRate * 100) + "% failures";
+    }
+}
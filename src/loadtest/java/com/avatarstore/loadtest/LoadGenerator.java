@@ -0,0 +1,153 @@
+package com.avatarstore.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Closed-loop load: N client threads each send a request, wait for the whole response body, and
+ * send the next. Latency is recorded (in microseconds) for requests started inside the measured
+ * window; the warmup that precedes it is discarded. Being closed-loop, a stalled server also
+ * slows the clients, so read p99 alongside throughput rather than on its own.
+ */
+final class LoadGenerator {
+
+    /** Produces the next request for one endpoint; called concurrently from all client threads. */
+    interface Scenario {
+
+        String name();
+
+        HttpRequest next(ThreadLocalRandom random) throws IOException;
+
+        int expectedStatus();
+    }
+
+    record Result(String scenario, int concurrency, Duration measured, long requests, long errors,
+                  Map<String, Long> errorKinds, Histogram latencyMicros, long bytes, long upstreamCalls) {
+
+        double throughput() {
+            return requests / seconds();
+        }
+
+        double megabytesPerSecond() {
+            return bytes / seconds() / (1024 * 1024);
+        }
+
+        double upstreamCallsPerRequest() {
+            long total = requests + errors;
+            return total == 0 ? 0 : (double) upstreamCalls / total;
+        }
+
+        double millis(double percentile) {
+            return latencyMicros.getTotalCount() == 0 ? 0 : latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        double maxMillis() {
+            return latencyMicros.getMaxValue() / 1000.0;
+        }
+
+        private double seconds() {
+            return measured.toNanos() / 1e9;
+        }
+    }
+
+    private final HttpClient client;
+
+    LoadGenerator(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Runs one scenario at one concurrency level.
+     *
+     * @param upstreamCalls running count of calls the stand-in has served, sampled around the
+     *                      measured window to report upstream calls per request
+     */
+    Result run(Scenario scenario, int concurrency, Duration warmup, Duration duration, LongSupplier upstreamCalls)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long measureUntil = measureFrom + duration.toNanos();
+        LongAdder bytes = new LongAdder();
+        LongAdder errors = new LongAdder();
+        Map<String, LongAdder> errorKinds = new ConcurrentHashMap<>();
+        List<Histogram> histograms = new ArrayList<>();
+        List<Thread> clients = new ArrayList<>();
+
+        for (int i = 0; i < concurrency; i++) {
+            Histogram histogram = new Histogram(3);
+            histograms.add(histogram);
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[64 * 1024];
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (true) {
+                    long sent = System.nanoTime();
+                    if (sent >= measureUntil) {
+                        return;
+                    }
+                    boolean measuring = sent >= measureFrom;
+                    String error = null;
+                    long received = 0;
+                    try {
+                        HttpResponse<InputStream> response = client.send(scenario.next(random), HttpResponse.BodyHandlers.ofInputStream());
+                        try (InputStream body = response.body()) {
+                            for (int n; (n = body.read(buffer)) >= 0; ) {
+                                received += n;
+                            }
+                        }
+                        if (response.statusCode() != scenario.expectedStatus()) {
+                            error = "HTTP " + response.statusCode();
+                        }
+                    } catch (IOException e) {
+                        error = e.getClass().getSimpleName();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (!measuring) {
+                        continue;
+                    }
+                    if (error != null) {
+                        errors.increment();
+                        errorKinds.computeIfAbsent(error, k -> new LongAdder()).increment();
+                    } else {
+                        histogram.recordValue((System.nanoTime() - sent) / 1000);
+                        bytes.add(received);
+                    }
+                }
+            }, "load-" + scenario.name() + "-" + i);
+            thread.setDaemon(true);
+            clients.add(thread);
+            thread.start();
+        }
+
+        long sleep = measureFrom - System.nanoTime();
+        if (sleep > 0) {
+            Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+        }
+        long upstreamBefore = upstreamCalls.getAsLong();
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        long upstream = upstreamCalls.getAsLong() - upstreamBefore;
+
+        Histogram latency = new Histogram(3);
+        histograms.forEach(latency::add);
+        Map<String, Long> kinds = new TreeMap<>();
+        errorKinds.forEach((kind, count) -> kinds.put(kind, count.sum()));
+        return new Result(scenario.name(), concurrency, duration, latency.getTotalCount(), errors.sum(), kinds,
+                latency, bytes.sum(), upstream);
+    }
+}
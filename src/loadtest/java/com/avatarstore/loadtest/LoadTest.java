@@ -0,0 +1,291 @@
+package com.avatarstore.loadtest;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.avatarstore.AvatarStoreApplication;
+import com.avatarstore.config.ObjectMapperConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput/latency curves for GET /avatars, POST /purchases/checkout, POST /purchases/webhook
+ * and GET /storage/download, entirely offline: Supabase and Stripe are replaced by a
+ * {@link StandInServer} in this JVM, and the application runs in-process against it (or, with
+ * --target, an already running instance configured to use the stand-in is driven instead).
+ * <p>
+ * Each user owns one version, seeded as a purchase, which is what it downloads; checkouts pick
+ * versions the user does not own. Webhook deliveries are signed checkout.session.completed
+ * events for new sessions of throwaway users, so they never collide with those purchases.
+ * <p>
+ * Run with: mvn -Ploadtest verify -Dloadtest.args="--concurrency=1,16,64 --supabase-latency=20ms"
+ */
+public final class LoadTest {
+
+    private static final String SERVICE_ROLE_KEY = "load-test-service-role-key";
+    private static final String STRIPE_SECRET_KEY = "sk_test_load_test";
+
+    private final LoadTestOptions options;
+    private final StandInServer standIn;
+    private final List<UUID> users = new ArrayList<>();
+    private final List<String> authorizations = new ArrayList<>();
+    private final int versionCount;
+
+    private LoadTest(LoadTestOptions options, StandInServer standIn) {
+        this.options = options;
+        this.standIn = standIn;
+        this.versionCount = options.avatars() * Catalog.VERSIONS_PER_AVATAR;
+        Algorithm algorithm = Algorithm.HMAC256(options.jwtSecret());
+        Instant expiresAt = Instant.now().plus(Duration.ofDays(1));
+        List<Map<String, Object>> purchases = new ArrayList<>(options.users());
+        for (int i = 0; i < options.users(); i++) {
+            UUID userId = UUID.nameUUIDFromBytes(("load-test-user-" + i).getBytes(StandardCharsets.UTF_8));
+            users.add(userId);
+            authorizations.add("Bearer " + JWT.create().withSubject(userId.toString()).withAudience("authenticated")
+                    .withClaim("role", "authenticated").withExpiresAt(expiresAt).sign(algorithm));
+            purchases.add(Catalog.purchase(userId, ownedVersion(i), "cs_test_seed_" + i));
+        }
+        standIn.tables().seed("purchases", purchases);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ObjectMapper objectMapper = new ObjectMapperConfig().objectMapper();
+        try (StandInServer standIn = StandInServer.start(options, objectMapper)) {
+            LoadTest loadTest = new LoadTest(options, standIn);
+            ConfigurableApplicationContext app = null;
+            String target = options.target();
+            if (target.isBlank()) {
+                app = loadTest.startApplication();
+                target = "http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort() + "/api";
+            } else {
+                printApplicationEnvironment(options, standIn);
+            }
+            try {
+                loadTest.run(target.replaceAll("/+$", ""));
+            } finally {
+                if (app != null) {
+                    app.close();
+                }
+            }
+        }
+        System.exit(0);
+    }
+
+    /** Starts the application on a random port, pointed at the stand-in. */
+    private ConfigurableApplicationContext startApplication() throws IOException {
+        // DevTools would relaunch main() in a restart class loader, i.e. start a second load test
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Files.createDirectories(Path.of("target", "loadtest"));
+        Path dataDir = Files.createTempDirectory(Path.of("target", "loadtest"), "app-data-");
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("supabase.url", standIn.baseUrl());
+        properties.put("supabase.service-role-key", SERVICE_ROLE_KEY);
+        properties.put("supabase.anon-key", "load-test-anon-key");
+        properties.put("supabase.jwt-secret", options.jwtSecret());
+        properties.put("stripe.secret-key", STRIPE_SECRET_KEY);
+        properties.put("stripe.webhook-secret", options.webhookSecret());
+        properties.put("stripe.api-base", standIn.baseUrl());
+        properties.put("stripe.webhook.queue.dir", dataDir.resolve("webhook-queue").toString());
+        properties.put("storage.uploads.dir", dataDir.resolve("uploads").toString());
+        properties.put("storage.cache.dir", dataDir.resolve("storage-cache").toString());
+        // per-request DEBUG logging would dominate the profile
+        properties.put("logging.level.com.avatarstore", "WARN");
+        properties.put("spring.main.banner-mode", "off");
+        properties.putAll(options.appProperties());
+        String[] args = properties.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(AvatarStoreApplication.class).run(args);
+    }
+
+    private void run(String target) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        LoadGenerator generator = new LoadGenerator(client);
+        System.out.printf(Locale.ROOT, "%nTarget %s, stand-in %s (supabase: %s; storage: %s; stripe: %s)%n",
+                target, standIn.baseUrl(), options.supabaseFaults(), options.storageFaults(), options.stripeFaults());
+        System.out.printf(Locale.ROOT, "%d users, %d avatars, %d-byte objects, %s warmup + %s per level%n%n",
+                options.users(), options.avatars(), options.objectSize(), options.warmup(), options.duration());
+        System.out.println(header());
+
+        List<LoadGenerator.Result> results = new ArrayList<>();
+        for (String name : options.scenarios()) {
+            LoadGenerator.Scenario scenario = scenario(name, target);
+            for (int concurrency : options.concurrency()) {
+                LoadGenerator.Result result = generator.run(scenario, concurrency, options.warmup(),
+                        options.duration(), standIn::requests);
+                results.add(result);
+                System.out.println(row(result));
+                if (!result.errorKinds().isEmpty()) {
+                    System.out.println("    errors: " + result.errorKinds());
+                }
+            }
+        }
+        writeCsv(results);
+        System.out.printf(Locale.ROOT, "%nStand-in served %d calls (%d injected failures). Results appended to %s%n",
+                standIn.requests(), standIn.injectedFailures(), options.output());
+    }
+
+    private LoadGenerator.Scenario scenario(String name, String target) {
+        Duration timeout = Duration.ofSeconds(60);
+        return switch (name) {
+            case "avatars" -> scenario(name, 200, random -> HttpRequest.newBuilder(URI.create(target + "/avatars"))
+                    .header("Accept-Encoding", "gzip")
+                    .timeout(timeout)
+                    .GET()
+                    .build());
+            case "checkout" -> scenario(name, 200, random -> {
+                int user = random.nextInt(users.size());
+                String body = "{\"versionIds\":[" + unownedVersions(user, random).stream()
+                        .map(String::valueOf).collect(Collectors.joining(",")) + "]}";
+                return HttpRequest.newBuilder(URI.create(target + "/purchases/checkout"))
+                        .header("Authorization", authorizations.get(user))
+                        .header("Content-Type", "application/json")
+                        .timeout(timeout)
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+            });
+            case "webhook" -> scenario(name, 200, random -> {
+                List<Long> versionIds = new ArrayList<>(randomVersions(random));
+                String payload = standIn.stripe().completedEvent(
+                        "cs_test_wh_" + UUID.randomUUID().toString().replace("-", ""), UUID.randomUUID(), versionIds);
+                return HttpRequest.newBuilder(URI.create(target + "/purchases/webhook"))
+                        .header("Stripe-Signature", standIn.stripe().signature(payload))
+                        .header("Content-Type", "application/json")
+                        .timeout(timeout)
+                        .POST(HttpRequest.BodyPublishers.ofString(payload))
+                        .build();
+            });
+            case "download" -> scenario(name, 200, random -> {
+                int user = random.nextInt(users.size());
+                return HttpRequest.newBuilder(URI.create(target + "/storage/download?versionId=" + ownedVersion(user)))
+                        .header("Authorization", authorizations.get(user))
+                        .timeout(timeout)
+                        .GET()
+                        .build();
+            });
+            default -> throw new IllegalArgumentException("Unknown scenario: " + name
+                    + " (expected avatars, checkout, webhook or download)");
+        };
+    }
+
+    private interface RequestFactory {
+        HttpRequest create(ThreadLocalRandom random) throws IOException;
+    }
+
+    private static LoadGenerator.Scenario scenario(String name, int expectedStatus, RequestFactory requests) {
+        return new LoadGenerator.Scenario() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public HttpRequest next(ThreadLocalRandom random) throws IOException {
+                return requests.create(random);
+            }
+
+            @Override
+            public int expectedStatus() {
+                return expectedStatus;
+            }
+        };
+    }
+
+    private long ownedVersion(int user) {
+        return user % versionCount + 1;
+    }
+
+    /** One to three distinct versions, as a cart would hold. */
+    private Set<Long> randomVersions(ThreadLocalRandom random) {
+        int count = 1 + random.nextInt(Math.min(3, versionCount));
+        Set<Long> versions = new LinkedHashSet<>();
+        while (versions.size() < count) {
+            versions.add(1 + (long) random.nextInt(versionCount));
+        }
+        return versions;
+    }
+
+    private Set<Long> unownedVersions(int user, ThreadLocalRandom random) {
+        Set<Long> versions;
+        do {
+            versions = randomVersions(random);
+        } while (versions.contains(ownedVersion(user)));
+        return versions;
+    }
+
+    private static String header() {
+        return String.format(Locale.ROOT, "%-10s %7s %9s %7s %9s %9s %9s %9s %9s %9s %8s %9s",
+                "scenario", "clients", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms",
+                "max ms", "MB/s", "calls/req");
+    }
+
+    private static String row(LoadGenerator.Result r) {
+        return String.format(Locale.ROOT, "%-10s %7d %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %8.1f %9.2f",
+                r.scenario(), r.concurrency(), r.requests(), r.errors(), r.throughput(), r.millis(50), r.millis(90),
+                r.millis(99), r.millis(99.9), r.maxMillis(), r.megabytesPerSecond(), r.upstreamCallsPerRequest());
+    }
+
+    private void writeCsv(List<LoadGenerator.Result> results) throws IOException {
+        Path output = options.output().toAbsolutePath();
+        Files.createDirectories(output.getParent());
+        boolean exists = Files.exists(output);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (!exists) {
+                out.println("timestamp,scenario,clients,requests,errors,throughput,p50_ms,p90_ms,p99_ms,p999_ms,"
+                        + "max_ms,mb_per_s,upstream_calls_per_request,supabase_faults,storage_faults,stripe_faults,app_properties");
+            }
+            String timestamp = Instant.now().toString();
+            String config = csv(options.supabaseFaults().toString()) + "," + csv(options.storageFaults().toString())
+                    + "," + csv(options.stripeFaults().toString()) + "," + csv(options.appProperties().toString());
+            for (LoadGenerator.Result r : results) {
+                out.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%.1f,%.2f,%s%n",
+                        timestamp, r.scenario(), r.concurrency(), r.requests(), r.errors(), r.throughput(),
+                        r.millis(50), r.millis(90), r.millis(99), r.millis(99.9), r.maxMillis(),
+                        r.megabytesPerSecond(), r.upstreamCallsPerRequest(), config);
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static void printApplicationEnvironment(LoadTestOptions options, StandInServer standIn) {
+        System.out.println("Driving an external application; it must be configured with:");
+        System.out.println("  SUPABASE_URL=" + standIn.baseUrl());
+        System.out.println("  SUPABASE_SERVICE_ROLE_KEY=" + SERVICE_ROLE_KEY);
+        System.out.println("  SUPABASE_JWT_SECRET=" + options.jwtSecret());
+        System.out.println("  STRIPE_SECRET_KEY=" + STRIPE_SECRET_KEY);
+        System.out.println("  STRIPE_WEBHOOK_SECRET=" + options.webhookSecret());
+        System.out.println("  STRIPE_API_BASE=" + standIn.baseUrl());
+    }
+}
@@ -0,0 +1,132 @@
+package com.avatarstore.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command-line options as --name=value. Options not listed here are passed through to the
+ * in-process application as Spring properties (e.g. --supabase.client=reactive), so one run
+ * can compare configurations.
+ *
+ * @param scenarios     endpoints to drive, in order (avatars, checkout, webhook, download)
+ * @param concurrency   closed-loop client counts; each scenario runs once per level
+ * @param warmup        unmeasured load before each level
+ * @param duration      measured load per level
+ * @param target        base URL of an already running application ("" = start it in-process)
+ * @param users         distinct signed-in users the load is spread across
+ * @param avatars       catalog size (three versions each)
+ * @param objectSize    bytes served per storage object
+ * @param output        CSV file the results are appended to
+ * @param appProperties pass-through properties for the in-process application
+ */
+record LoadTestOptions(
+        List<String> scenarios,
+        int[] concurrency,
+        Duration warmup,
+        Duration duration,
+        String target,
+        int users,
+        int avatars,
+        long objectSize,
+        String standInHost,
+        int standInPort,
+        Faults supabaseFaults,
+        Faults storageFaults,
+        Faults stripeFaults,
+        String jwtSecret,
+        String webhookSecret,
+        Path output,
+        Map<String, String> appProperties) {
+
+    static final String USAGE = """
+            Options (--name=value):
+              --scenarios=avatars,checkout,webhook,download   endpoints to drive, in order
+              --concurrency=1,8,32,64                         concurrent clients per level
+              --warmup=5s --duration=20s                      per level
+              --users=1000 --avatars=500 --object-size=1MB    data set
+              --target=http://host:8080/api                   drive a running app instead of starting one
+              --stand-in-host=127.0.0.1 --stand-in-port=0     where the Supabase/Stripe stand-in listens
+              --{supabase|storage|stripe}-latency=0ms         injected latency per upstream call
+              --{supabase|storage|stripe}-jitter=0ms          plus up to this much random extra latency
+              --{supabase|storage|stripe}-failure-rate=0      fraction of calls answered with 5xx
+              --jwt-secret=... --webhook-secret=...           must match the app when using --target
+              --output=target/loadtest/results.csv
+            Any other --name=value is passed to the in-process app as a property.""";
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("scenarios", "avatars,checkout,webhook,download");
+        DEFAULTS.put("concurrency", "1,8,32,64");
+        DEFAULTS.put("warmup", "5s");
+        DEFAULTS.put("duration", "20s");
+        DEFAULTS.put("target", "");
+        DEFAULTS.put("users", "1000");
+        DEFAULTS.put("avatars", "500");
+        DEFAULTS.put("object-size", "1MB");
+        DEFAULTS.put("stand-in-host", "127.0.0.1");
+        DEFAULTS.put("stand-in-port", "0");
+        for (String upstream : List.of("supabase", "storage", "stripe")) {
+            DEFAULTS.put(upstream + "-latency", "0ms");
+            DEFAULTS.put(upstream + "-jitter", "0ms");
+            DEFAULTS.put(upstream + "-failure-rate", "0");
+        }
+        DEFAULTS.put("jwt-secret", "load-test-jwt-secret-at-least-32-bytes");
+        DEFAULTS.put("webhook-secret", "whsec_load_test");
+        DEFAULTS.put("output", "target/loadtest/results.csv");
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>(DEFAULTS);
+        Map<String, String> appProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.isBlank()) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg + "\n" + USAGE);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            if (DEFAULTS.containsKey(name)) {
+                values.put(name, value);
+            } else {
+                appProperties.put(name, value);
+            }
+        }
+        return new LoadTestOptions(
+                Arrays.stream(values.get("scenarios").split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList(),
+                Arrays.stream(values.get("concurrency").split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray(),
+                DurationStyle.detectAndParse(values.get("warmup")),
+                DurationStyle.detectAndParse(values.get("duration")),
+                values.get("target"),
+                Integer.parseInt(values.get("users")),
+                Integer.parseInt(values.get("avatars")),
+                DataSize.parse(values.get("object-size")).toBytes(),
+                values.get("stand-in-host"),
+                Integer.parseInt(values.get("stand-in-port")),
+                faults(values, "supabase"),
+                faults(values, "storage"),
+                faults(values, "stripe"),
+                values.get("jwt-secret"),
+                values.get("webhook-secret"),
+                Path.of(values.get("output")),
+                appProperties);
+    }
+
+    private static Faults faults(Map<String, String> values, String upstream) {
+        return new Faults(
+                DurationStyle.detectAndParse(values.get(upstream + "-latency")),
+                DurationStyle.detectAndParse(values.get(upstream + "-jitter")),
+                Double.parseDouble(values.get(upstream + "-failure-rate")));
+    }
+}
@@ -0,0 +1,385 @@
+package com.avatarstore.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory tables behind the subset of PostgREST the application uses: filters (eq, neq, gt,
+ * gte, lt, lte, in, is, optionally negated with not.), order, limit, offset, column selection
+ * with one-to-one embeds such as purchases?select=id,avatars(id,name), and inserts.
+ * Embeds follow the PostgREST naming convention: avatar_versions(...) joins on avatar_version_id.
+ */
+final class PostgrestTables {
+
+    /** A response to hand back verbatim: status, JSON body and the number of rows it holds. */
+    record Result(int status, byte[] body, int rows) {}
+
+    private static final TypeReference<List<Map<String, Object>>> ROWS = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    PostgrestTables(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /** Creates a table; "id" is always indexed, plus the given columns (for eq filters). */
+    void create(String name, String... indexedColumns) {
+        tables.put(name, new Table(indexedColumns));
+    }
+
+    /** Adds rows directly (seeding), assigning id and created_at where absent. */
+    void seed(String table, List<Map<String, Object>> rows) {
+        tables.get(table).insert(rows);
+    }
+
+    int size(String table) {
+        return tables.get(table).size();
+    }
+
+    Result select(String table, List<Map.Entry<String, String>> params) {
+        Table source = tables.get(table);
+        if (source == null) {
+            return error(404, "42P01", "relation \"public." + table + "\" does not exist");
+        }
+        List<Filter> filters = new ArrayList<>();
+        List<SelectItem> select = null;
+        Comparator<Map<String, Object>> order = null;
+        int limit = Integer.MAX_VALUE;
+        int offset = 0;
+        try {
+            for (Map.Entry<String, String> param : params) {
+                switch (param.getKey()) {
+                    case "select" -> select = parseSelect(param.getValue());
+                    case "order" -> order = parseOrder(param.getValue());
+                    case "limit" -> limit = Integer.parseInt(param.getValue());
+                    case "offset" -> offset = Integer.parseInt(param.getValue());
+                    default -> filters.add(Filter.parse(param.getKey(), param.getValue()));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return error(400, "PGRST100", e.getMessage());
+        }
+
+        List<Map<String, Object>> rows = source.candidates(filters);
+        rows.removeIf(row -> !filters.stream().allMatch(filter -> filter.test(row)));
+        if (order != null) {
+            rows.sort(order);
+        }
+        int from = Math.min(offset, rows.size());
+        int to = (int) Math.min((long) from + limit, rows.size());
+        rows = rows.subList(from, to);
+
+        List<Map<String, Object>> out = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            out.add(select == null ? row : project(row, select));
+        }
+        return new Result(200, json(out), out.size());
+    }
+
+    /**
+     * Inserts a JSON object or array, assigning id and created_at where absent.
+     *
+     * @param representation whether to echo the inserted rows (Prefer: return=representation)
+     */
+    Result insert(String table, byte[] body, boolean representation) {
+        Table target = tables.get(table);
+        if (target == null) {
+            return error(404, "42P01", "relation \"public." + table + "\" does not exist");
+        }
+        List<Map<String, Object>> rows;
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            rows = objectMapper.convertValue(node.isArray() ? node : objectMapper.createArrayNode().add(node), ROWS);
+        } catch (IOException | IllegalArgumentException e) {
+            return error(400, "PGRST102", "Invalid JSON body: " + e.getMessage());
+        }
+        target.insert(rows);
+        return new Result(201, representation ? json(rows) : new byte[0], rows.size());
+    }
+
+    private Map<String, Object> project(Map<String, Object> row, List<SelectItem> select) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (SelectItem item : select) {
+            if (item.embedded() == null) {
+                if ("*".equals(item.name())) {
+                    out.putAll(row);
+                } else {
+                    out.put(item.name(), row.get(item.name()));
+                }
+                continue;
+            }
+            Table related = tables.get(item.name());
+            Object key = row.get(singular(item.name()) + "_id");
+            Map<String, Object> match = related == null || key == null ? null : related.byId(key);
+            out.put(item.name(), match == null ? null : project(match, item.embedded()));
+        }
+        return out;
+    }
+
+    private static String singular(String table) {
+        return table.endsWith("s") ? table.substring(0, table.length() - 1) : table;
+    }
+
+    /** Parses "id,name,avatars(id,name)" (embeds may nest); "*" selects all columns. */
+    static List<SelectItem> parseSelect(String value) {
+        List<SelectItem> items = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : ',';
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                String item = value.substring(start, i).trim();
+                start = i + 1;
+                if (item.isEmpty()) {
+                    continue;
+                }
+                int open = item.indexOf('(');
+                if (open < 0) {
+                    items.add(new SelectItem(item, null));
+                } else if (!item.endsWith(")")) {
+                    throw new IllegalArgumentException("Unbalanced embed in select: " + item);
+                } else {
+                    items.add(new SelectItem(item.substring(0, open),
+                            parseSelect(item.substring(open + 1, item.length() - 1))));
+                }
+            }
+        }
+        if (depth != 0) {
+            throw new IllegalArgumentException("Unbalanced parentheses in select: " + value);
+        }
+        return items;
+    }
+
+    /** Parses "avatar_id.asc,sort_order.desc" (nullsfirst/nullslast modifiers accepted). */
+    static Comparator<Map<String, Object>> parseOrder(String value) {
+        Comparator<Map<String, Object>> order = null;
+        for (String term : value.split(",")) {
+            String[] parts = term.trim().split("\\.");
+            String column = parts[0];
+            boolean descending = false;
+            Boolean nullsFirst = null;
+            for (int i = 1; i < parts.length; i++) {
+                switch (parts[i]) {
+                    case "asc" -> descending = false;
+                    case "desc" -> descending = true;
+                    case "nullsfirst" -> nullsFirst = true;
+                    case "nullslast" -> nullsFirst = false;
+                    default -> throw new IllegalArgumentException("Unknown order modifier: " + term);
+                }
+            }
+            // PostgreSQL defaults: NULLS LAST for ascending, NULLS FIRST for descending
+            boolean nullsLow = nullsFirst != null ? nullsFirst != descending : descending;
+            Comparator<Object> values = nullsLow
+                    ? Comparator.nullsFirst(PostgrestTables::compareValues)
+                    : Comparator.nullsLast(PostgrestTables::compareValues);
+            Comparator<Map<String, Object>> byColumn = Comparator.comparing(row -> row.get(column), values);
+            if (descending) {
+                byColumn = byColumn.reversed();
+            }
+            order = order == null ? byColumn : order.thenComparing(byColumn);
+        }
+        return order;
+    }
+
+    static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Result error(int status, String code, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("code", code);
+        body.put("details", null);
+        body.put("hint", null);
+        body.put("message", message);
+        return new Result(status, json(body), 0);
+    }
+
+    record SelectItem(String name, List<SelectItem> embedded) {}
+
+    /** One column filter such as category=eq.anime or id=in.(1,2,3). */
+    record Filter(String column, String operator, String operand, Set<String> operands, boolean negated) {
+
+        static Filter parse(String column, String expression) {
+            boolean negated = expression.startsWith("not.");
+            if (negated) {
+                expression = expression.substring(4);
+            }
+            int dot = expression.indexOf('.');
+            if (dot < 0) {
+                throw new IllegalArgumentException("Invalid filter " + column + "=" + expression);
+            }
+            String operator = expression.substring(0, dot);
+            String operand = expression.substring(dot + 1);
+            Set<String> operands = null;
+            switch (operator) {
+                case "eq", "neq", "gt", "gte", "lt", "lte" -> { }
+                case "is" -> {
+                    if (!Set.of("null", "true", "false").contains(operand)) {
+                        throw new IllegalArgumentException("Invalid is. operand: " + operand);
+                    }
+                }
+                case "in" -> {
+                    if (!operand.startsWith("(") || !operand.endsWith(")")) {
+                        throw new IllegalArgumentException("Invalid in. list: " + operand);
+                    }
+                    operands = new HashSet<>();
+                    for (String item : operand.substring(1, operand.length() - 1).split(",")) {
+                        String trimmed = item.trim();
+                        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+                            trimmed = trimmed.substring(1, trimmed.length() - 1);
+                        }
+                        operands.add(trimmed);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported operator: " + operator);
+            }
+            return new Filter(column, operator, operand, operands, negated);
+        }
+
+        boolean test(Map<String, Object> row) {
+            return matches(row.get(column)) != negated;
+        }
+
+        private boolean matches(Object value) {
+            if ("is".equals(operator)) {
+                return "null".equals(operand) ? value == null : value != null && operand.equals(value.toString());
+            }
+            if (value == null) {
+                return false;
+            }
+            if ("in".equals(operator)) {
+                return operands.contains(value.toString());
+            }
+            int comparison = compareTo(value, operand);
+            return switch (operator) {
+                case "eq" -> comparison == 0;
+                case "neq" -> comparison != 0;
+                case "gt" -> comparison > 0;
+                case "gte" -> comparison >= 0;
+                case "lt" -> comparison < 0;
+                default -> comparison <= 0;
+            };
+        }
+
+        private static int compareTo(Object value, String literal) {
+            if (value instanceof Number) {
+                try {
+                    return new BigDecimal(value.toString()).compareTo(new BigDecimal(literal));
+                } catch (NumberFormatException e) {
+                    return value.toString().compareTo(literal);
+                }
+            }
+            if (value instanceof Boolean) {
+                return value.toString().compareTo(literal.toLowerCase());
+            }
+            return value.toString().compareTo(literal);
+        }
+    }
+
+    /** Rows in insertion order, with hash indexes on id and selected columns (by string value). */
+    private static final class Table {
+
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+        private final Map<String, Map<String, List<Map<String, Object>>>> indexes = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private long maxId;
+
+        Table(String... indexedColumns) {
+            indexes.put("id", new HashMap<>());
+            for (String column : indexedColumns) {
+                indexes.put(column, new HashMap<>());
+            }
+        }
+
+        void insert(List<Map<String, Object>> added) {
+            String now = OffsetDateTime.now(ZoneOffset.UTC).toString();
+            lock.writeLock().lock();
+            try {
+                for (Map<String, Object> row : added) {
+                    row.putIfAbsent("id", maxId + 1);
+                    row.putIfAbsent("created_at", now);
+                    rows.add(row);
+                    indexes.forEach((column, index) -> {
+                        Object value = row.get(column);
+                        if (value != null) {
+                            index.computeIfAbsent(value.toString(), k -> new ArrayList<>(1)).add(row);
+                        }
+                    });
+                    if (row.get("id") instanceof Number id && id.longValue() > maxId) {
+                        maxId = id.longValue();
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return rows.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        Map<String, Object> byId(Object id) {
+            lock.readLock().lock();
+            try {
+                List<Map<String, Object>> matches = indexes.get("id").get(id.toString());
+                return matches == null || matches.isEmpty() ? null : matches.get(0);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /** A mutable copy of the rows that can match: an index bucket if an eq filter allows it. */
+        List<Map<String, Object>> candidates(List<Filter> filters) {
+            lock.readLock().lock();
+            try {
+                for (Filter filter : filters) {
+                    Map<String, List<Map<String, Object>>> index = indexes.get(filter.column());
+                    if (index != null && "eq".equals(filter.operator()) && !filter.negated()) {
+                        return new ArrayList<>(index.getOrDefault(filter.operand(), List.of()));
+                    }
+                }
+                return new ArrayList<>(rows);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
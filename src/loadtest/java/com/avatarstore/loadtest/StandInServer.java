@@ -0,0 +1,280 @@
+package com.avatarstore.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline stand-in for Supabase and Stripe on one port: PostgREST under /rest/v1 (see
+ * {@link PostgrestTables}), Storage object reads and uploads under /storage/v1/object, and the
+ * Checkout Sessions API under /v1/checkout/sessions. Each of the three has its own {@link Faults}.
+ * <p>
+ * Storage objects are synthetic: every path exists and serves objectSize bytes, with single-range
+ * support, so downloads exercise the real streaming path without fixtures on disk.
+ */
+final class StandInServer implements AutoCloseable {
+
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+    private static final int CHUNK = 64 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final PostgrestTables tables;
+    private final StripeSimulator stripe;
+    private final Faults supabaseFaults;
+    private final Faults storageFaults;
+    private final Faults stripeFaults;
+    private final long objectSize;
+    private final byte[] chunk = new byte[CHUNK];
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+
+    private StandInServer(HttpServer server, ExecutorService executor, LoadTestOptions options, ObjectMapper objectMapper) {
+        this.server = server;
+        this.executor = executor;
+        this.tables = new PostgrestTables(objectMapper);
+        this.stripe = new StripeSimulator(objectMapper, options.webhookSecret());
+        this.supabaseFaults = options.supabaseFaults();
+        this.storageFaults = options.storageFaults();
+        this.stripeFaults = options.stripeFaults();
+        this.objectSize = options.objectSize();
+        for (int i = 0; i < CHUNK; i++) {
+            chunk[i] = (byte) (i * 31 + 7);
+        }
+        tables.create("avatars", "slug");
+        tables.create("avatar_versions", "avatar_id");
+        tables.create("purchases", "user_id");
+        Catalog.seed(tables, options.avatars());
+    }
+
+    static StandInServer start(LoadTestOptions options, ObjectMapper objectMapper) throws IOException {
+        // headers and body go out in separate writes; without TCP_NODELAY every response waits
+        // out the client's delayed ACK (~40ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(options.standInHost(), options.standInPort()), 1024);
+        // injected latency sleeps on the handling thread, so the pool must not cap concurrency
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StandInServer standIn = new StandInServer(server, executor, options, objectMapper);
+        server.createContext("/", standIn::handle);
+        server.setExecutor(executor);
+        server.start();
+        return standIn;
+    }
+
+    String baseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    PostgrestTables tables() {
+        return tables;
+    }
+
+    StripeSimulator stripe() {
+        return stripe;
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long injectedFailures() {
+        return injectedFailures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            String path = exchange.getRequestURI().getRawPath();
+            String method = exchange.getRequestMethod();
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                // storage uploads can be large and are only acknowledged, never read back
+                if (path.startsWith("/storage/")) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                    body = new byte[0];
+                } else {
+                    body = in.readAllBytes();
+                }
+            }
+            if (path.startsWith("/rest/v1/")) {
+                if (fail(supabaseFaults)) {
+                    sendJson(exchange, 503, "{\"code\":\"PGRST000\",\"message\":\"injected failure\"}");
+                } else {
+                    handlePostgrest(exchange, method, path.substring("/rest/v1/".length()), body);
+                }
+            } else if (path.startsWith("/storage/v1/object/")) {
+                if (fail(storageFaults)) {
+                    sendJson(exchange, 503, "{\"statusCode\":\"503\",\"error\":\"injected failure\",\"message\":\"injected failure\"}");
+                } else {
+                    handleStorage(exchange, method, path);
+                }
+            } else if (path.startsWith("/v1/checkout/sessions")) {
+                if (fail(stripeFaults)) {
+                    sendJson(exchange, 500, "{\"error\":{\"type\":\"api_error\",\"message\":\"injected failure\"}}");
+                } else {
+                    handleStripe(exchange, method, path, body);
+                }
+            } else {
+                sendJson(exchange, 404, "{\"message\":\"no stand-in route for " + path + "\"}");
+            }
+        } catch (RuntimeException e) {
+            if (exchange.getResponseCode() < 0) {
+                sendJson(exchange, 500, "{\"message\":\"stand-in error: " + e.getClass().getSimpleName() + "\"}");
+            }
+            throw e;
+        }
+    }
+
+    private boolean fail(Faults faults) {
+        if (faults.apply()) {
+            injectedFailures.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void handlePostgrest(HttpExchange exchange, String method, String table, byte[] body) throws IOException {
+        PostgrestTables.Result result;
+        if ("GET".equals(method)) {
+            result = tables.select(table, queryParams(exchange.getRequestURI().getRawQuery()));
+        } else if ("POST".equals(method)) {
+            String prefer = exchange.getRequestHeaders().getFirst("Prefer");
+            result = tables.insert(table, body, prefer != null && prefer.contains("return=representation"));
+        } else {
+            sendJson(exchange, 405, "{\"message\":\"method not allowed\"}");
+            return;
+        }
+        if (result.status() == 200) {
+            exchange.getResponseHeaders().set("Content-Range",
+                    result.rows() == 0 ? "*/*" : "0-" + (result.rows() - 1) + "/*");
+        }
+        send(exchange, result.status(), "application/json; charset=utf-8", result.body());
+    }
+
+    private void handleStorage(HttpExchange exchange, String method, String path) throws IOException {
+        if ("POST".equals(method) || "PUT".equals(method)) {
+            String key = path.substring("/storage/v1/object/".length());
+            sendJson(exchange, 200, "{\"Key\":\"" + key + "\"}");
+            return;
+        }
+        if (!"GET".equals(method)) {
+            sendJson(exchange, 405, "{\"message\":\"method not allowed\"}");
+            return;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/octet-stream");
+        headers.set("ETag", "\"" + Integer.toHexString(path.hashCode()) + "-" + objectSize + "\"");
+        headers.set("Last-Modified", LAST_MODIFIED);
+        headers.set("Accept-Ranges", "bytes");
+
+        long start = 0;
+        long end = objectSize - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+            String[] bounds = range.substring(6).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, objectSize - Long.parseLong(bounds[1]));
+            } else {
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Long.parseLong(bounds[1]));
+                }
+            }
+            if (start >= objectSize || start > end) {
+                headers.set("Content-Range", "bytes */" + objectSize);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            status = 206;
+            headers.set("Content-Range", "bytes " + start + "-" + end + "/" + objectSize);
+        }
+        long length = end - start + 1;
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            long remaining = length;
+            int offset = (int) (start % CHUNK);
+            while (remaining > 0) {
+                int n = (int) Math.min(remaining, CHUNK - offset);
+                out.write(chunk, offset, n);
+                remaining -= n;
+                offset = 0;
+            }
+        }
+    }
+
+    private void handleStripe(HttpExchange exchange, String method, String path, byte[] body) throws IOException {
+        if ("POST".equals(method) && "/v1/checkout/sessions".equals(path)) {
+            send(exchange, 200, "application/json", stripe.createSession(new String(body, StandardCharsets.UTF_8)));
+            return;
+        }
+        if ("GET".equals(method) && path.startsWith("/v1/checkout/sessions/")) {
+            byte[] session = stripe.getSession(path.substring("/v1/checkout/sessions/".length()));
+            if (session != null) {
+                send(exchange, 200, "application/json", session);
+                return;
+            }
+            sendJson(exchange, 404, "{\"error\":{\"type\":\"invalid_request_error\",\"code\":\"resource_missing\","
+                    + "\"message\":\"No such checkout.session\"}}");
+            return;
+        }
+        sendJson(exchange, 404, "{\"error\":{\"type\":\"invalid_request_error\",\"message\":\"Unrecognized request URL\"}}");
+    }
+
+    private static List<Map.Entry<String, String>> queryParams(String rawQuery) {
+        List<Map.Entry<String, String>> params = new ArrayList<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+        }
+        return params;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
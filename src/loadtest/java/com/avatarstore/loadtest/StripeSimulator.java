@@ -0,0 +1,124 @@
+package com.avatarstore.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.Stripe;
+import com.stripe.net.Webhook;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * The part of the Stripe API the application calls (creating and retrieving Checkout Sessions),
+ * and the other direction: checkout.session.completed events signed like Stripe's webhook
+ * deliveries, for POSTing to /purchases/webhook.
+ */
+final class StripeSimulator {
+
+    private final ObjectMapper objectMapper;
+    private final String webhookSecret;
+    private final Map<String, Map<String, Object>> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    StripeSimulator(ObjectMapper objectMapper, String webhookSecret) {
+        this.objectMapper = objectMapper;
+        this.webhookSecret = webhookSecret;
+    }
+
+    /** POST /v1/checkout/sessions with the form-encoded parameters stripe-java sends. */
+    byte[] createSession(String form) throws IOException {
+        Map<String, String> params = parseForm(form);
+        String id = "cs_test_" + Long.toString(sequence.incrementAndGet(), 36) + UUID.randomUUID().toString().replace("-", "");
+        long total = 0;
+        for (int i = 0; params.containsKey("line_items[" + i + "][quantity]"); i++) {
+            String amount = params.get("line_items[" + i + "][price_data][unit_amount]");
+            long quantity = Long.parseLong(params.get("line_items[" + i + "][quantity]"));
+            total += (amount != null ? Long.parseLong(amount) : 0) * quantity;
+        }
+        Map<String, String> metadata = new LinkedHashMap<>();
+        params.forEach((key, value) -> {
+            if (key.startsWith("metadata[") && key.endsWith("]")) {
+                metadata.put(key.substring(9, key.length() - 1), value);
+            }
+        });
+        Map<String, Object> session = session(id, metadata, total, "open", "unpaid");
+        session.put("success_url", params.get("success_url"));
+        session.put("cancel_url", params.get("cancel_url"));
+        sessions.put(id, session);
+        return objectMapper.writeValueAsBytes(session);
+    }
+
+    /** GET /v1/checkout/sessions/{id}, or null if this simulator never created it. */
+    byte[] getSession(String id) throws IOException {
+        Map<String, Object> session = sessions.get(id);
+        return session == null ? null : objectMapper.writeValueAsBytes(session);
+    }
+
+    /** A checkout.session.completed event for a paid session with the application's metadata. */
+    String completedEvent(String sessionId, UUID userId, List<Long> versionIds) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("userId", userId.toString());
+        metadata.put("versionIds", versionIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("id", "evt_" + UUID.randomUUID().toString().replace("-", ""));
+        event.put("object", "event");
+        // stripe-java only deserializes data.object when the event's API version matches its own
+        event.put("api_version", Stripe.API_VERSION);
+        event.put("created", Instant.now().getEpochSecond());
+        event.put("livemode", false);
+        event.put("type", "checkout.session.completed");
+        event.put("data", Map.of("object", session(sessionId, metadata, 0, "complete", "paid")));
+        return objectMapper.writeValueAsString(event);
+    }
+
+    /** The Stripe-Signature header for a payload: t=timestamp,v1=HMAC-SHA256(secret, "t.payload"). */
+    String signature(String payload) {
+        long timestamp = Webhook.Util.getTimeNow();
+        try {
+            return "t=" + timestamp + ",v1=" + Webhook.Util.computeHmacSha256(webhookSecret, timestamp + "." + payload);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException("Cannot sign webhook payload", e);
+        }
+    }
+
+    private static Map<String, Object> session(String id, Map<String, String> metadata, long total,
+                                               String status, String paymentStatus) {
+        Map<String, Object> session = new LinkedHashMap<>();
+        session.put("id", id);
+        session.put("object", "checkout.session");
+        session.put("mode", "payment");
+        session.put("status", status);
+        session.put("payment_status", paymentStatus);
+        session.put("currency", "usd");
+        session.put("amount_total", total);
+        session.put("metadata", metadata);
+        session.put("url", "open".equals(status) ? "https://checkout.stripe.test/c/pay/" + id : null);
+        session.put("livemode", false);
+        session.put("created", Instant.now().getEpochSecond());
+        return session;
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+}
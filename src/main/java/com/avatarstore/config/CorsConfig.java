@@ -32,6 +32,12 @@ public class CorsConfig {
         config.addExposedHeader("Content-Disposition");
         config.addExposedHeader("Content-Type");
         config.addExposedHeader("Content-Length");
+        // Range/resume support for large downloads
+        config.addExposedHeader("Accept-Ranges");
+        config.addExposedHeader("Content-Range");
+        config.addExposedHeader("ETag");
+        // Keyset cursor for paginated catalog listings
+        config.addExposedHeader("X-Next-Cursor");
         
         source.registerCorsConfiguration("/**", config);
         return new CorsFilter(source);
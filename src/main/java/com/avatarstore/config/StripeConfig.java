@@ -13,8 +13,16 @@ public class StripeConfig {
     @Value("${stripe.secret-key:}")
     private String secretKey;
 
+    /** Overrides the Stripe API host (e.g. a local stand-in for load tests); blank = api.stripe.com. */
+    @Value("${stripe.api-base:}")
+    private String apiBase;
+
     @PostConstruct
     public void init() {
+        if (apiBase != null && !apiBase.isBlank()) {
+            Stripe.overrideApiBase(apiBase);
+            log.info("Stripe API base overridden: {}", apiBase);
+        }
         if (secretKey == null || secretKey.isBlank()) {
             log.warn("Stripe secret key is not configured. Payment features will not work. "
                     + "Set STRIPE_SECRET_KEY environment variable or stripe.secret-key in application.properties.");
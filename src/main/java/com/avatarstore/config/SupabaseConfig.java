@@ -1,15 +1,122 @@
 package com.avatarstore.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.ChannelOption;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+
+/**
+ * HTTP client shared by all Supabase calls (PostgREST and Storage): a bounded keep-alive
+ * connection pool with connect, pool-acquire and read timeouts, so a slow Supabase fails
+ * fast instead of tying up request threads.
+ * <p>
+ * With supabase.client=reactive, Storage downloads use a non-blocking WebClient on Reactor Netty
+ * instead, with the same pool limits and timeouts. Only the body relay is non-blocking: the
+ * request thread still waits for the response headers, and every other call (PostgREST reads,
+ * the purchase insert, uploads) stays on the RestTemplate.
+ */
 @Configuration
 public class SupabaseConfig {
-    
+
+    @Value("${supabase.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${supabase.http.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${supabase.http.connect-timeout:3s}")
+    private Duration connectTimeout;
+
+    @Value("${supabase.http.connection-request-timeout:2s}")
+    private Duration connectionRequestTimeout;
+
+    @Value("${supabase.http.read-timeout:30s}")
+    private Duration readTimeout;
+
+    @Value("${supabase.http.idle-timeout:30s}")
+    private Duration idleTimeout;
+
+    @Value("${supabase.http.keep-alive:60s}")
+    private Duration keepAlive;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager supabaseConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setTimeToLive(TimeValue.of(keepAlive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient supabaseHttpClient(PoolingHttpClientConnectionManager supabaseConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(supabaseConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> TimeValue.of(keepAlive))
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .evictExpiredConnections()
+                .build();
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient supabaseHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(supabaseHttpClient));
     }
-}
 
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(name = "supabase.client", havingValue = "reactive")
+    public ConnectionProvider supabaseConnectionProvider() {
+        return ConnectionProvider.builder("supabase")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(connectionRequestTimeout)
+                .maxIdleTime(idleTimeout)
+                .maxLifeTime(keepAlive)
+                .evictInBackground(idleTimeout)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "supabase.client", havingValue = "reactive")
+    public WebClient supabaseWebClient(WebClient.Builder builder, ConnectionProvider supabaseConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(supabaseConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+
+    /**
+     * Exposes pool utilisation (leased, available, pending, max) as httpcomponents.httpclient.pool.* metrics.
+     */
+    @Bean
+    public MeterBinder supabaseConnectionPoolMetrics(PoolingHttpClientConnectionManager supabaseConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(supabaseConnectionManager, "supabase");
+    }
+}
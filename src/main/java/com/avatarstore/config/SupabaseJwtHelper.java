@@ -1,27 +1,91 @@
 package com.avatarstore.config;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
 import java.util.Optional;
 import java.util.UUID;
 
 /**
  * Verifies Supabase Auth JWTs (HS256) and extracts the user id (sub claim).
  * Used to identify the caller for purchase-gated download.
+ * Successfully verified tokens are remembered (by SHA-256 of the token) until their
+ * exp claim, so repeated requests from the same session skip verification.
  */
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class SupabaseJwtHelper {
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${supabase.jwt-secret:}")
     private String jwtSecret;
 
+    @Value("${supabase.jwt.cache-size:10000}")
+    private long cacheSize;
+
+    /** Upper bound on how long a verified token is trusted without re-verification (also covers tokens without exp). */
+    @Value("${supabase.jwt.cache-max-ttl:10m}")
+    private Duration cacheMaxTtl;
+
+    private JWTVerifier verifier;
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    private record VerifiedToken(UUID userId, Date expiresAt) {}
+
+    @PostConstruct
+    public void init() {
+        if (jwtSecret != null && !jwtSecret.isBlank()) {
+            verifier = JWT.require(Algorithm.HMAC256(jwtSecret)).build();
+        }
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        long maxTtl = cacheMaxTtl.toNanos();
+                        if (token.expiresAt() == null) {
+                            return maxTtl;
+                        }
+                        long untilExp = Duration.ofMillis(token.expiresAt().getTime() - System.currentTimeMillis()).toNanos();
+                        return Math.max(0, Math.min(untilExp, maxTtl));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified");
+    }
+
     /**
      * Parses Authorization: Bearer &lt;token&gt; and returns the user id if the token is valid.
      * @param authorizationHeader value of the Authorization header (e.g. "Bearer eyJ...")
@@ -37,7 +101,6 @@ public class SupabaseJwtHelper {
             log.debug("JWT empty after Bearer prefix");
             return Optional.empty();
         }
-        log.debug("JWT received: {}... (length={})", token.substring(0, Math.min(30, token.length())), token.length());
         return getUserIdFromToken(token);
     }
 
@@ -48,22 +111,26 @@ public class SupabaseJwtHelper {
      * @return the user UUID, or empty if invalid or jwt-secret not configured
      */
     public Optional<UUID> getUserIdFromToken(String token) {
-        if (jwtSecret == null || jwtSecret.isBlank()) {
+        if (verifier == null) {
             log.warn("supabase.jwt-secret is not configured; cannot verify JWT");
             return Optional.empty();
         }
+        String key = hash(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.userId());
+        }
         try {
-            Algorithm algorithm = Algorithm.HMAC256(jwtSecret);
-            DecodedJWT decoded = JWT.require(algorithm)
-                    .build()
-                    .verify(token);
+            DecodedJWT decoded = verifier.verify(token);
             String sub = decoded.getSubject();
             if (sub == null || sub.isBlank()) {
                 log.debug("JWT verified but sub claim missing");
                 return Optional.empty();
             }
-            log.info("JWT verified: sub={}, iss={}, exp={}", sub, decoded.getIssuer(), decoded.getExpiresAt());
-            return Optional.of(UUID.fromString(sub));
+            UUID userId = UUID.fromString(sub);
+            verifiedTokens.put(key, new VerifiedToken(userId, decoded.getExpiresAt()));
+            log.debug("JWT verified: sub={}, iss={}, exp={}", sub, decoded.getIssuer(), decoded.getExpiresAt());
+            return Optional.of(userId);
         } catch (JWTVerificationException e) {
             log.debug("Invalid or expired JWT: {}", e.getMessage());
             return Optional.empty();
@@ -72,4 +139,13 @@ public class SupabaseJwtHelper {
             return Optional.empty();
         }
     }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
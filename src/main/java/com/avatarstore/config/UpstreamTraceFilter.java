@@ -0,0 +1,163 @@
+package com.avatarstore.config;
+
+import com.avatarstore.service.UpstreamTrace;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Traces the upstream calls made while serving each request (see {@link UpstreamTrace}).
+ * <p>
+ * In debug logging every request gets a line with its call count, summed upstream time and
+ * per-operation breakdown. Requests making more than upstream.trace.call-budget calls are
+ * logged as warnings and counted in upstream.requests.over-budget, so N+1 loops show up
+ * without anyone reading traces. The calls per request are also kept as the
+ * upstream.request.calls summary, per endpoint.
+ * <p>
+ * With upstream.trace.response-header=true the trace is also sent as a Server-Timing header.
+ * It is added when the body starts, so it covers calls made before the response is written
+ * (for downloads, up to opening the object).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UpstreamTraceFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${upstream.trace.enabled:true}")
+    private boolean enabled;
+
+    /** Upstream calls one request may make before it is reported; 0 disables the check. */
+    @Value("${upstream.trace.call-budget:10}")
+    private int callBudget;
+
+    /** Send the trace as a Server-Timing header; exposes internal operation names, so off by default. */
+    @Value("${upstream.trace.response-header:false}")
+    private boolean responseHeader;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        UpstreamTrace trace = UpstreamTrace.begin();
+        HttpServletResponse traced = responseHeader ? new ServerTimingResponse(response, trace) : response;
+        try {
+            chain.doFilter(request, traced);
+        } finally {
+            UpstreamTrace.end();
+            if (traced instanceof ServerTimingResponse timing) {
+                timing.addHeader();
+            }
+            report(request, response, trace);
+        }
+    }
+
+    private void report(HttpServletRequest request, HttpServletResponse response, UpstreamTrace trace) {
+        long calls = trace.calls();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("upstream.request.calls")
+                .description("Upstream calls made while serving one request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(calls);
+        if (callBudget > 0 && calls > callBudget) {
+            Counter.builder("upstream.requests.over-budget")
+                    .description("Requests that made more than upstream.trace.call-budget upstream calls")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("Upstream call budget exceeded: method={}, uri={}, status={}, calls={}, budget={}, upstreamMs={}, operations=[{}]",
+                    request.getMethod(), request.getRequestURI(), response.getStatus(), calls, callBudget,
+                    millis(trace.nanos()), trace.summary());
+        } else if (log.isDebugEnabled() && calls > 0) {
+            log.debug("Upstream trace: method={}, uri={}, status={}, calls={}, upstreamMs={}, operations=[{}]",
+                    request.getMethod(), request.getRequestURI(), response.getStatus(), calls,
+                    millis(trace.nanos()), trace.summary());
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+
+    /**
+     * Adds the Server-Timing header just before the body is first written (or the response is
+     * otherwise committed), when the calls that produced it are done but headers can still be set.
+     */
+    private static final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final UpstreamTrace trace;
+        private boolean added;
+
+        ServerTimingResponse(HttpServletResponse response, UpstreamTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        void addHeader() {
+            if (!added && !isCommitted()) {
+                added = true;
+                addHeader("Server-Timing", trace.serverTiming());
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addHeader();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addHeader();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -1,28 +1,83 @@
 package com.avatarstore.controller;
 
 import com.avatarstore.dto.ApiResponse;
+import com.avatarstore.dto.AvatarPage;
+import com.avatarstore.dto.AvatarQuery;
 import com.avatarstore.model.Avatar;
 import com.avatarstore.model.AvatarVersion;
 import com.avatarstore.service.AvatarService;
+import com.avatarstore.service.CatalogResponseCache;
+import com.avatarstore.service.CatalogSearchIndex;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/avatars")
 @RequiredArgsConstructor
 @Slf4j
 public class AvatarController {
+
+    /** Response header carrying the keyset cursor for the next page of a paginated listing. */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /** Request header carrying catalog.admin-key for the admin endpoints. */
+    public static final String ADMIN_KEY_HEADER = "X-Admin-Key";
     
     private final AvatarService avatarService;
+    private final CatalogResponseCache catalogResponseCache;
+    private final CatalogSearchIndex catalogSearchIndex;
+    private final ObjectMapper objectMapper;
+
+    /** Shared secret for the admin endpoints; blank disables them. */
+    @Value("${catalog.admin-key:}")
+    private String adminKey;
     
+    /**
+     * All avatars. Unless disabled, the body is pre-serialized (and pre-gzipped) once per
+     * catalog change and sent as raw bytes; gzip is used when the client accepts it.
+     * Responses carry a strong ETag, and If-None-Match with the current ETag returns 304.
+     * <p>
+     * With any of after, limit, category, platform, featured, active or fields, returns one page
+     * instead (ordered by id). The X-Next-Cursor response header holds the value to pass as
+     * "after" for the next page and is absent on the last page. fields is a comma-separated list
+     * of JSON field names; only those fields (and id) are returned.
+     */
     @GetMapping
-    public ResponseEntity<ApiResponse<List<Avatar>>> getAvatars() {
+    public ResponseEntity<?> getAvatars(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "platform", required = false) String platform,
+            @RequestParam(value = "featured", required = false) Boolean featured,
+            @RequestParam(value = "active", required = false) Boolean active,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (after != null || limit != null || category != null || platform != null || featured != null
+                || active != null || fields != null) {
+            return getAvatarPage(new AvatarQuery(after, limit != null ? limit : 0, category, platform,
+                    featured, active, fields));
+        }
         try {
+            if (catalogResponseCache.isEnabled()) {
+                return prepared(catalogResponseCache.getAllAvatarsBody(), acceptEncoding, ifNoneMatch);
+            }
             // Return all avatars
             List<Avatar> avatars = avatarService.getAllAvatars();
             return ResponseEntity.ok(ApiResponse.success(avatars, avatars.size()));
@@ -33,9 +88,86 @@ public class AvatarController {
         }
     }
     
+    private ResponseEntity<?> getAvatarPage(AvatarQuery query) {
+        try {
+            AvatarPage page = avatarService.getAvatarPage(query);
+            HttpHeaders headers = new HttpHeaders();
+            if (page.nextCursor() != null) {
+                headers.set(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+            }
+            if (query.fields() == null || query.fields().isEmpty()) {
+                return ResponseEntity.ok().headers(headers).body(ApiResponse.success(page.items(), page.items().size()));
+            }
+            Set<String> selected = query.fields().stream().map(String::trim).collect(Collectors.toSet());
+            List<Map<String, Object>> items = new ArrayList<>(page.items().size());
+            for (Avatar avatar : page.items()) {
+                Map<String, Object> row = objectMapper.convertValue(avatar, new TypeReference<LinkedHashMap<String, Object>>() {});
+                row.keySet().removeIf(field -> !field.equals("id") && !selected.contains(field));
+                items.add(row);
+            }
+            return ResponseEntity.ok().headers(headers).body(ApiResponse.success(items, items.size()));
+        } catch (IllegalArgumentException error) {
+            return ResponseEntity.badRequest().body(ApiResponse.<List<Avatar>>error(error.getMessage()));
+        } catch (Exception error) {
+            log.error("Error fetching avatar page: {}", query, error);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.<List<Avatar>>error("Failed to fetch avatars"));
+        }
+    }
+
+    /**
+     * Drops the cached catalog (and reloads the snapshot) after an edit made directly in
+     * Supabase. Requires the X-Admin-Key header to match catalog.admin-key; without a
+     * configured key the endpoint does not exist.
+     */
+    @PostMapping("/cache/invalidate")
+    public ResponseEntity<ApiResponse<Void>> invalidateCache(
+            @RequestHeader(value = ADMIN_KEY_HEADER, required = false) String key) {
+        if (adminKey == null || adminKey.isBlank()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error("Not found."));
+        }
+        if (key == null || !MessageDigest.isEqual(key.getBytes(StandardCharsets.UTF_8), adminKey.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("Invalid admin key."));
+        }
+        avatarService.invalidateCaches();
+        log.info("Catalog caches invalidated by admin request");
+        return ResponseEntity.accepted().body(ApiResponse.success(null));
+    }
+
+    /**
+     * Full-text search over names, descriptions, categories and version names, best match first.
+     * Matches whole words, word prefixes ("avat") and words with one typo ("avtar").
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<List<Avatar>>> searchAvatars(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", required = false, defaultValue = "0") int limit) {
+        if (query.isBlank()) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Query must not be blank"));
+        }
+        if (!catalogSearchIndex.isEnabled() || !catalogSearchIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ApiResponse.error("Search is not available"));
+        }
+        try {
+            List<Avatar> avatars = catalogSearchIndex.search(query, limit);
+            return ResponseEntity.ok(ApiResponse.success(avatars, avatars.size()));
+        } catch (Exception error) {
+            log.error("Error searching avatars: {}", query, error);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to search avatars"));
+        }
+    }
+
     @GetMapping("/{id}/versions")
-    public ResponseEntity<ApiResponse<List<AvatarVersion>>> getVersionsByAvatarId(@PathVariable Long id) {
+    public ResponseEntity<?> getVersionsByAvatarId(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            if (catalogResponseCache.isEnabled()) {
+                return prepared(catalogResponseCache.getVersionsBody(id), acceptEncoding, ifNoneMatch);
+            }
             List<AvatarVersion> versions = avatarService.getVersionsByAvatarId(id);
             return ResponseEntity.ok(ApiResponse.success(versions, versions.size()));
         } catch (Exception error) {
@@ -46,8 +178,14 @@ public class AvatarController {
     }
 
     @GetMapping("/slug/{slug}")
-    public ResponseEntity<ApiResponse<List<Avatar>>> getAvatarBySlug(@PathVariable String slug) {
+    public ResponseEntity<?> getAvatarBySlug(
+            @PathVariable String slug,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            if (catalogResponseCache.isEnabled()) {
+                return prepared(catalogResponseCache.getAvatarBySlugBody(slug), acceptEncoding, ifNoneMatch);
+            }
             Avatar avatar = avatarService.getAvatarBySlug(slug);
             List<Avatar> avatarList = List.of(avatar);
             return ResponseEntity.ok(ApiResponse.success(avatarList, 1));
@@ -65,5 +203,44 @@ public class AvatarController {
                     .body(ApiResponse.<List<Avatar>>error("Failed to fetch avatar"));
         }
     }
-}
 
+    /**
+     * Sends a pre-serialized body, or 304 Not Modified if the client already has it.
+     */
+    private ResponseEntity<?> prepared(CatalogResponseCache.PreparedBody body, String acceptEncoding, String ifNoneMatch) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        headers.setETag(gzip ? body.gzipEtag() : body.etag());
+        headers.setCacheControl(catalogResponseCache.getCacheControl());
+        if (body.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).body(body.gzipped());
+        }
+        return ResponseEntity.ok().headers(headers).body(body.json());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
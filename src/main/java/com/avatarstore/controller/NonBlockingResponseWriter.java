@@ -0,0 +1,236 @@
+package com.avatarstore.controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a stream of byte chunks to the servlet response with non-blocking I/O. One chunk is
+ * requested at a time, and the next only once the container reports the socket writable
+ * again, so neither the upstream nor the client connection holds a thread while it waits and
+ * memory per download stays at about one chunk.
+ * <p>
+ * Signals arrive from the upstream I/O threads and from the container. They only record what
+ * happened and then call {@link #drain()}, which runs on one thread at a time (work-in-progress
+ * counter, no locks) and is the only place that touches the response or the subscription.
+ * <p>
+ * If the upstream fails, the client must not mistake the partial body for the whole file:
+ * before anything was sent it gets 502, afterwards the connection is aborted (see
+ * {@link ResponseAbortConfig}).
+ */
+@Slf4j
+final class NonBlockingResponseWriter implements Subscriber<byte[]> {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream out;
+    private final Runnable onDone;
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Subscription subscription;
+    private volatile byte[] pending;
+    private volatile boolean upstreamComplete;
+    private volatile Throwable upstreamError;
+    private volatile boolean clientGone;
+
+    // only accessed inside drain()
+    private boolean requested;
+    private boolean done;
+
+    private NonBlockingResponseWriter(AsyncContext asyncContext, ServletOutputStream out, Runnable onDone) {
+        this.asyncContext = asyncContext;
+        this.out = out;
+        this.onDone = onDone;
+    }
+
+    /**
+     * Puts the request into async mode and starts streaming. Status and headers must already
+     * be set on the response; the handler must return without writing anything else.
+     *
+     * @param timeout async timeout for the whole transfer
+     * @param onDone  runs exactly once when the transfer ends, successfully or not
+     */
+    static void start(HttpServletRequest request, HttpServletResponse response, Publisher<byte[]> body,
+                      Duration timeout, Runnable onDone) throws IOException {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeout.toMillis());
+        NonBlockingResponseWriter writer = new NonBlockingResponseWriter(asyncContext, response.getOutputStream(), onDone);
+        ClientListener listener = writer.new ClientListener();
+        asyncContext.addListener(listener);
+        writer.out.setWriteListener(listener);
+        body.subscribe(writer);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(byte[] chunk) {
+        pending = chunk;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        upstreamError = error;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamComplete = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainOnce();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        if (done) {
+            return;
+        }
+        if (clientGone) {
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            finish();
+            return;
+        }
+        if (upstreamError != null) {
+            log.warn("Upstream failed during download: {}", upstreamError.getMessage());
+            abort(upstreamError);
+            return;
+        }
+        try {
+            while (out.isReady()) {
+                byte[] chunk = pending;
+                if (chunk != null) {
+                    pending = null;
+                    requested = false;
+                    out.write(chunk);
+                } else if (upstreamComplete) {
+                    finish();
+                    return;
+                } else {
+                    if (!requested && subscription != null) {
+                        requested = true;
+                        subscription.request(1);
+                    }
+                    return;
+                }
+            }
+            // not writable: the container calls onWritePossible when it is
+        } catch (IOException e) {
+            log.debug("Client write failed during download: {}", e.getMessage());
+            clientGone = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            finish();
+        }
+    }
+
+    private void finish() {
+        done = true;
+        pending = null;
+        complete();
+        onDone.run();
+    }
+
+    private void abort(Throwable error) {
+        done = true;
+        pending = null;
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        try {
+            if (!response.isCommitted()) {
+                // drops the download headers (Content-Length, Content-Range) along with the status
+                response.reset();
+                response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+                complete();
+            } else {
+                asyncContext.getRequest().setAttribute(ResponseAbortConfig.ERROR_ATTRIBUTE, error);
+                asyncContext.dispatch(ResponseAbortConfig.ABORT_PATH);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the container already ended the request
+            log.debug("Could not abort download: {}", e.getMessage());
+            complete();
+        }
+        onDone.run();
+    }
+
+    private void complete() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException ignored) {
+            // already completed (by a container callback or by finish())
+        }
+    }
+
+    /** Container-side callbacks: socket writable again, write failure, timeout, disconnect. */
+    private final class ClientListener implements WriteListener, AsyncListener {
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            log.debug("Client connection failed during download: {}", error.getMessage());
+            clientGone = true;
+            drain();
+        }
+
+        // the container error-dispatches unless the listener completes the request itself
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            log.warn("Download timed out");
+            clientGone = true;
+            complete();
+            drain();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            clientGone = true;
+            complete();
+            drain();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // completed by finish(), or by the container after a failure finish() has not seen yet
+            clientGone = true;
+            drain();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+    }
+}
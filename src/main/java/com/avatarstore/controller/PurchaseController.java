@@ -2,18 +2,27 @@ package com.avatarstore.controller;
 
 import com.avatarstore.config.SupabaseJwtHelper;
 import com.avatarstore.dto.ApiResponse;
+import com.avatarstore.dto.CheckoutFulfillment;
 import com.avatarstore.dto.CheckoutRequest;
 import com.avatarstore.dto.PurchasedItem;
+import com.avatarstore.model.AvatarVersion;
 import com.avatarstore.model.AvatarVersionPair;
 import com.avatarstore.service.AvatarService;
+import com.avatarstore.service.CheckoutFulfillmentService;
 import com.avatarstore.service.PurchaseService;
 import com.avatarstore.service.StripeService;
+import com.avatarstore.service.UpstreamFanOut;
+import com.avatarstore.service.UpstreamGuard;
+import com.avatarstore.service.UpstreamUnavailableException;
+import com.avatarstore.service.WebhookDedupStore;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
 import com.stripe.model.checkout.Session;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -23,10 +32,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @RestController
@@ -39,6 +53,13 @@ public class PurchaseController {
     private final PurchaseService purchaseService;
     private final AvatarService avatarService;
     private final StripeService stripeService;
+    private final CheckoutFulfillmentService checkoutFulfillmentService;
+    private final WebhookDedupStore webhookDedupStore;
+    private final UpstreamFanOut upstreamFanOut;
+
+    /** Shared secret for the webhook dead-letter replay; blank disables it. */
+    @Value("${stripe.webhook.admin-key:}")
+    private String webhookAdminKey;
 
     /**
      * Creates a Stripe Checkout Session for one or more avatar versions.
@@ -60,23 +81,29 @@ public class PurchaseController {
             return ResponseEntity.badRequest().body(ApiResponse.error("versionIds is required."));
         }
 
+        // Resolve the versions and check prior purchases concurrently (independent lookups)
         List<AvatarVersionPair> items;
+        Set<Long> alreadyPurchased;
         try {
-            items = versionIds.stream()
-                    .map(vId -> {
-                        var version = avatarService.getVersionById(vId);
-                        var avatar = avatarService.getAvatarById(version.getAvatarId());
-                        return new AvatarVersionPair(avatar, version);
-                    })
-                    .toList();
+            Map.Entry<List<AvatarVersionPair>, Set<Long>> lookup = upstreamFanOut.both(
+                    () -> avatarService.getVersionPairs(versionIds),
+                    () -> purchaseService.getPurchasedVersionIds(userId, versionIds),
+                    Map::entry);
+            items = lookup.getKey();
+            alreadyPurchased = lookup.getValue();
         } catch (RuntimeException e) {
+            if (UpstreamGuard.isUpstreamFailure(e)) {
+                log.warn("Catalog or purchases unavailable during checkout: {}", e.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(ApiResponse.error("Checkout is temporarily unavailable. Please try again later."));
+            }
             log.warn("Version or avatar not found during checkout: {}", e.getMessage());
             return ResponseEntity.badRequest().body(ApiResponse.error("One or more versions not found."));
         }
 
         // Prevent duplicate purchases
         for (AvatarVersionPair item : items) {
-            if (purchaseService.hasPurchased(userId, item.version().getId())) {
+            if (alreadyPurchased.contains(item.version().getId())) {
                 return ResponseEntity.badRequest().body(ApiResponse.error(
                         "You have already purchased: " + item.avatar().getName() + " - " + item.version().getName()));
             }
@@ -88,13 +115,19 @@ public class PurchaseController {
         } catch (StripeException e) {
             log.error("Stripe error during checkout: versionIds={}, user={}, error={}", versionIds, userId, e.getMessage(), e);
             return ResponseEntity.internalServerError().body(ApiResponse.error("Payment service error. Please try again later."));
+        } catch (UpstreamUnavailableException e) {
+            // rejected without calling Stripe; upstream.rejected and the circuit breaker log cover it
+            log.debug("Stripe unavailable during checkout: versionIds={}, user={}, error={}", versionIds, userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ApiResponse.error("Payment service is temporarily unavailable. Please try again later."));
         }
     }
 
     /**
      * Stripe webhook endpoint. Receives events directly from Stripe's servers.
      * The request is verified using the Stripe-Signature header — no JWT auth needed.
-     * Purchases are recorded ONLY when payment is confirmed here.
+     * Purchases are recorded ONLY when payment is confirmed here. The event is acknowledged
+     * once the fulfillment job is durably queued; purchases are recorded asynchronously.
      */
     @PostMapping("/webhook")
     public ResponseEntity<String> handleStripeWebhook(
@@ -113,7 +146,21 @@ public class PurchaseController {
         }
 
         if ("checkout.session.completed".equals(event.getType())) {
-            handleCheckoutSessionCompleted(event);
+            CheckoutFulfillment job = toFulfillment(event);
+            if (job != null) {
+                if (!webhookDedupStore.claim(job.dedupKey())) {
+                    log.info("Duplicate webhook delivery ignored: eventId={}, sessionId={}", job.eventId(), job.sessionId());
+                    return ResponseEntity.ok("OK");
+                }
+                try {
+                    if (!checkoutFulfillmentService.submit(job)) {
+                        return ResponseEntity.internalServerError().body("Could not record purchases.");
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to queue webhook job: sessionId={}", job.sessionId(), e);
+                    return ResponseEntity.internalServerError().body("Could not queue event.");
+                }
+            }
         } else {
             log.debug("Ignoring Stripe event type: {}", event.getType());
         }
@@ -122,6 +169,32 @@ public class PurchaseController {
         return ResponseEntity.ok("OK");
     }
 
+    /**
+     * Queues every dead-lettered webhook job again, once whatever made it fail permanently (e.g.
+     * a deleted version) has been fixed. Requires X-Admin-Key matching stripe.webhook.admin-key;
+     * without a configured key the endpoint does not exist.
+     */
+    @PostMapping("/webhook/dead-letters/replay")
+    public ResponseEntity<ApiResponse<Integer>> replayWebhookDeadLetters(
+            @RequestHeader(value = AvatarController.ADMIN_KEY_HEADER, required = false) String key) {
+        if (webhookAdminKey == null || webhookAdminKey.isBlank()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error("Not found."));
+        }
+        if (key == null || !MessageDigest.isEqual(key.getBytes(StandardCharsets.UTF_8), webhookAdminKey.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("Invalid admin key."));
+        }
+        try {
+            int replayed = checkoutFulfillmentService.replayDeadLetters();
+            log.info("Replaying {} webhook dead letters by admin request", replayed);
+            return ResponseEntity.accepted().body(ApiResponse.success(replayed));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiResponse.error(e.getMessage()));
+        } catch (IOException e) {
+            log.error("Failed to replay webhook dead letters", e);
+            return ResponseEntity.internalServerError().body(ApiResponse.error("Could not replay dead letters."));
+        }
+    }
+
     /**
      * Returns all purchases for the authenticated user with embedded avatar and version info.
      */
@@ -156,53 +229,76 @@ public class PurchaseController {
     }
 
     /**
-     * Extracts userId and versionIds from Stripe session metadata and records purchases.
-     * Idempotent: skips versions already recorded to handle Stripe retries safely.
+     * Check ownership of many versions at once, given as versionIds=1,2,3 or as avatarId
+     * (all versions of that avatar). Returns a versionId -> purchased map.
      */
-    private void handleCheckoutSessionCompleted(Event event) {
+    @GetMapping("/status/bulk")
+    public ResponseEntity<ApiResponse<Map<Long, Boolean>>> getBulkPurchaseStatus(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestParam(value = "versionIds", required = false) List<Long> versionIds,
+            @RequestParam(value = "avatarId", required = false) Long avatarId) {
+
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+
+        List<Long> ids;
+        if (versionIds != null && !versionIds.isEmpty()) {
+            ids = versionIds;
+        } else if (avatarId != null) {
+            try {
+                ids = avatarService.getVersionsByAvatarId(avatarId).stream().map(AvatarVersion::getId).toList();
+            } catch (RuntimeException e) {
+                log.error("Error fetching versions for avatar id: {}", avatarId, e);
+                return ResponseEntity.internalServerError().body(ApiResponse.error("Failed to fetch avatar versions."));
+            }
+        } else {
+            return ResponseEntity.badRequest().body(ApiResponse.error("versionIds or avatarId is required."));
+        }
+
+        Set<Long> owned;
+        try {
+            owned = purchaseService.getPurchasedVersionIds(userIdOpt.get(), ids);
+        } catch (RuntimeException e) {
+            // display only: show the versions as not owned rather than failing the page
+            log.warn("Failed to check purchases: user={}, versionIds={}, error={}", userIdOpt.get(), ids, e.getMessage());
+            owned = Set.of();
+        }
+        Map<Long, Boolean> status = new LinkedHashMap<>();
+        for (Long id : ids) {
+            status.put(id, owned.contains(id));
+        }
+        return ResponseEntity.ok(ApiResponse.success(status, status.size()));
+    }
+
+    /**
+     * Extracts userId and versionIds from Stripe session metadata into a fulfillment job.
+     *
+     * @return the job, or null if the session is unusable (logged; retrying would not help)
+     */
+    private CheckoutFulfillment toFulfillment(Event event) {
         Session session = (Session) event.getDataObjectDeserializer().getObject().orElse(null);
         if (session == null) {
             log.error("Could not deserialize checkout session from webhook event: {}", event.getId());
-            return;
+            return null;
         }
 
         Map<String, String> metadata = session.getMetadata();
         if (metadata == null || !metadata.containsKey("userId") || !metadata.containsKey("versionIds")) {
             log.error("Webhook session missing required metadata (userId/versionIds): sessionId={}", session.getId());
-            return;
+            return null;
         }
 
-        UUID userId;
-        List<Long> versionIds;
         try {
-            userId = UUID.fromString(metadata.get("userId"));
-            versionIds = Arrays.stream(metadata.get("versionIds").split(","))
+            UUID userId = UUID.fromString(metadata.get("userId"));
+            List<Long> versionIds = Arrays.stream(metadata.get("versionIds").split(","))
                     .map(Long::parseLong)
                     .toList();
+            return new CheckoutFulfillment(event.getId(), session.getId(), userId, versionIds);
         } catch (IllegalArgumentException e) {
             log.error("Invalid metadata in webhook session: sessionId={}, error={}", session.getId(), e.getMessage());
-            return;
-        }
-
-        // Filter out already-recorded versions (idempotency for Stripe retries)
-        List<Long> newVersionIds = versionIds.stream()
-                .filter(vId -> !purchaseService.hasPurchased(userId, vId))
-                .toList();
-
-        if (newVersionIds.isEmpty()) {
-            log.info("All purchases already recorded (idempotent skip): userId={}, sessionId={}", userId, session.getId());
-            return;
-        }
-
-        List<Long> avatarIds = newVersionIds.stream()
-                .map(vId -> avatarService.getVersionById(vId).getAvatarId())
-                .toList();
-
-        boolean recorded = purchaseService.recordPurchases(userId, avatarIds, newVersionIds, session.getId());
-        if (recorded) {
-            log.info("Purchases recorded via webhook: userId={}, versionIds={}, sessionId={}", userId, newVersionIds, session.getId());
-        } else {
-            log.error("Failed to record purchases via webhook: userId={}, versionIds={}, sessionId={}", userId, newVersionIds, session.getId());
+            return null;
         }
     }
 }
@@ -0,0 +1,51 @@
+package com.avatarstore.controller;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.ClientAbortException;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Lets {@link NonBlockingResponseWriter} abort a download whose response is already committed.
+ * The servlet API has no call for that: completing the request ends the body normally
+ * (Content-Length responses then stall, chunked ones get their terminating chunk), so a
+ * truncated download would look complete. The writer instead dispatches the request to
+ * {@link AbortServlet}, and the ClientAbortException it throws makes Tomcat close the
+ * connection without writing anything else (no error page include, no last chunk), which the
+ * client sees as a failed transfer.
+ */
+@Configuration
+class ResponseAbortConfig {
+
+    static final String ABORT_PATH = "/internal/abort-response";
+
+    /** Request attribute holding the upstream error that caused the abort. */
+    static final String ERROR_ATTRIBUTE = ResponseAbortConfig.class.getName() + ".error";
+
+    @Bean
+    ServletRegistrationBean<AbortServlet> responseAbortServlet() {
+        ServletRegistrationBean<AbortServlet> registration = new ServletRegistrationBean<>(new AbortServlet(), ABORT_PATH);
+        registration.setAsyncSupported(true);
+        return registration;
+    }
+
+    /** Throws for requests dispatched by the writer; anything else gets 404. */
+    static final class AbortServlet extends HttpServlet {
+
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if (request.getDispatcherType() != DispatcherType.ASYNC
+                    || !(request.getAttribute(ERROR_ATTRIBUTE) instanceof Throwable error)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            throw new ClientAbortException("Download aborted after upstream failure: " + error.getMessage(), error);
+        }
+    }
+}
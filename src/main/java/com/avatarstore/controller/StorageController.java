@@ -2,24 +2,40 @@ package com.avatarstore.controller;
 
 import com.avatarstore.config.SupabaseJwtHelper;
 import com.avatarstore.dto.ApiResponse;
+import com.avatarstore.dto.UploadSessionRequest;
+import com.avatarstore.dto.UploadSessionStatus;
 import com.avatarstore.model.Avatar;
 import com.avatarstore.model.AvatarVersion;
 import com.avatarstore.service.AvatarService;
 import com.avatarstore.service.PurchaseService;
+import com.avatarstore.service.StorageObject;
 import com.avatarstore.service.SupabaseStorageService;
+import com.avatarstore.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -34,15 +50,32 @@ public class StorageController {
     private final SupabaseJwtHelper supabaseJwtHelper;
     private final AvatarService avatarService;
     private final PurchaseService purchaseService;
+    private final UploadSessionService uploadSessionService;
+
+    /** Upper bound for a non-blocking download (same limit as StreamingResponseBody downloads). */
+    @Value("${spring.mvc.async.request-timeout:30m}")
+    private Duration downloadTimeout;
 
     /**
      * Download avatar file. Requires Authorization: Bearer &lt;access_token&gt;.
      * Only users who have purchased this avatar may download. Use slug or avatarId.
+     * The file is streamed from Supabase Storage to the client without being buffered in memory.
+     * A single-range Range header (optionally guarded by If-Range) is forwarded upstream so
+     * interrupted downloads can resume with 206 Partial Content.
+     * <p>
+     * With supabase.client=reactive, the request thread waits only for the upstream response
+     * headers; the body is then relayed chunk by chunk with non-blocking servlet I/O, so a slow
+     * transfer holds no thread while it waits on either side. If the upstream fails before
+     * anything was sent the client gets 502; after that the connection is aborted.
      */
     @GetMapping("/download")
-    public ResponseEntity<byte[]> downloadAvatar(
+    public ResponseEntity<StreamingResponseBody> downloadAvatar(
             @RequestHeader(value = "Authorization", required = false) String authorization,
-            @RequestParam("versionId") Long versionId) {
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestParam("versionId") Long versionId,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
         Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
         if (userIdOpt.isEmpty()) {
@@ -64,17 +97,79 @@ public class StorageController {
             throw e;
         }
 
-        byte[] bytes = supabaseStorageService.downloadFile(version.getBlobContainerName(), version.getBlobFilePath());
-        if (bytes == null || bytes.length == 0) {
+        String forwardedRange = isSingleByteRange(range) ? range : null;
+        StorageObject object = supabaseStorageService.openDownload(
+                version.getBlobContainerName(), version.getBlobFilePath(), forwardedRange, ifRange);
+        if (object == null) {
             return ResponseEntity.notFound().build();
         }
 
-        String filename = version.getBlobFileName() != null ? version.getBlobFileName() : ("avatar-version-" + versionId + ".vrca");
         HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (object.getETag() != null) {
+            headers.setETag(object.getETag());
+        }
+        if (object.getLastModified() >= 0) {
+            headers.setLastModified(object.getLastModified());
+        }
+
+        if (object.getStatusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+            object.close();
+            if (object.getContentRange() != null) {
+                headers.set(HttpHeaders.CONTENT_RANGE, object.getContentRange());
+            }
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        boolean partial = object.getStatusCode() == HttpStatus.PARTIAL_CONTENT;
+        if (!partial && object.getContentLength() == 0) {
+            object.close();
+            return ResponseEntity.notFound().build();
+        }
+
+        String filename = version.getBlobFileName() != null ? version.getBlobFileName() : ("avatar-version-" + versionId + ".vrca");
         headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
         headers.setContentDispositionFormData("attachment", filename);
-        headers.setContentLength(bytes.length);
-        return ResponseEntity.ok().headers(headers).body(bytes);
+        if (object.getContentLength() >= 0) {
+            headers.setContentLength(object.getContentLength());
+        }
+        if (partial && object.getContentRange() != null) {
+            headers.set(HttpHeaders.CONTENT_RANGE, object.getContentRange());
+        }
+
+        HttpStatus status = partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK;
+        if (object.isNonBlocking()) {
+            response.setStatus(status.value());
+            headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            try {
+                NonBlockingResponseWriter.start(request, response, object.getBodyChunks(), downloadTimeout, object::close);
+            } catch (IOException | RuntimeException e) {
+                object.close();
+                throw e;
+            }
+            return null;
+        }
+        StreamingResponseBody body = out -> {
+            try (object) {
+                object.writeTo(out);
+            }
+        };
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    /**
+     * Only a single "bytes=" range is forwarded; multi-range and malformed values are
+     * ignored (the full file is served), as permitted by RFC 9110.
+     */
+    private static boolean isSingleByteRange(String range) {
+        if (range == null || range.isBlank()) {
+            return false;
+        }
+        try {
+            return HttpRange.parseRanges(range).size() == 1;
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed Range header: {}", range);
+            return false;
+        }
     }
 
     /**
@@ -94,4 +189,134 @@ public class StorageController {
         }
         return ApiResponse.success(Map.of("path", storedPath), 1);
     }
+
+    /**
+     * Start a chunked upload. Requires Authorization: Bearer &lt;access_token&gt;; the session and
+     * all further requests for it belong to that user. JSON body: size (required), optional path,
+     * filename, contentType and sha256. Chunks are then sent with PUT /uploads/{uploadId}?offset=N.
+     * Returns 429 when the user or the server has too many uploads open.
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<ApiResponse<UploadSessionStatus>> createUploadSession(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestBody UploadSessionRequest request) {
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(uploadSessionService.create(request, userIdOpt.get())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ApiResponse.error(e.getMessage()));
+        } catch (IOException e) {
+            log.error("Failed to create upload session", e);
+            return ResponseEntity.internalServerError().body(ApiResponse.error("Could not create upload session."));
+        }
+    }
+
+    /**
+     * Upload one chunk: the raw request body (application/octet-stream) is written at the given
+     * byte offset. Chunks may be sent in any order and in parallel; failed chunks are simply re-sent.
+     * A Content-Length is required, so a chunk that does not fit is rejected before it is written.
+     */
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ApiResponse<UploadSessionStatus>> uploadChunk(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request) {
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+        try {
+            UploadSessionStatus status = uploadSessionService.writeChunk(
+                    uploadId, userIdOpt.get(), offset, request.getContentLengthLong(), request.getInputStream());
+            return ResponseEntity.ok(ApiResponse.success(status));
+        } catch (IOException e) {
+            log.warn("Chunk upload interrupted: uploadId={}, offset={}, error={}", uploadId, offset, e.getMessage());
+            return ResponseEntity.internalServerError().body(ApiResponse.error("Chunk upload failed."));
+        } catch (RuntimeException e) {
+            return uploadSessionError(e);
+        }
+    }
+
+    /**
+     * Upload progress, including the byte ranges still missing (used to resume).
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<ApiResponse<UploadSessionStatus>> getUploadSession(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable String uploadId) {
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(uploadSessionService.getStatus(uploadId, userIdOpt.get())));
+        } catch (RuntimeException e) {
+            return uploadSessionError(e);
+        }
+    }
+
+    /**
+     * Finish a chunked upload: verifies the SHA-256 (hex, from this request or from session
+     * creation) and stores the assembled file. Returns the stored path on success.
+     */
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<ApiResponse<Map<String, String>>> completeUploadSession(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable String uploadId,
+            @RequestParam(value = "sha256", required = false) String sha256) {
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+        try {
+            String storedPath = uploadSessionService.complete(uploadId, userIdOpt.get(), sha256);
+            if (storedPath == null) {
+                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(ApiResponse.error("Upload failed"));
+            }
+            return ResponseEntity.ok(ApiResponse.success(Map.of("path", storedPath), 1));
+        } catch (IOException e) {
+            log.error("Failed to complete upload session {}", uploadId, e);
+            return ResponseEntity.internalServerError().body(ApiResponse.error("Upload failed"));
+        } catch (RuntimeException e) {
+            return uploadSessionError(e);
+        }
+    }
+
+    /**
+     * Abandon a chunked upload and discard the staged bytes.
+     */
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<ApiResponse<Void>> abortUploadSession(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable String uploadId) {
+        Optional<UUID> userIdOpt = supabaseJwtHelper.getUserIdFromAuthorization(authorization);
+        if (userIdOpt.isEmpty()) {
+            return ResponseEntity.status(401).body(ApiResponse.error("Authentication required."));
+        }
+        try {
+            uploadSessionService.abort(uploadId, userIdOpt.get());
+            return ResponseEntity.ok(ApiResponse.success(null));
+        } catch (RuntimeException e) {
+            return uploadSessionError(e);
+        }
+    }
+
+    private static <T> ResponseEntity<ApiResponse<T>> uploadSessionError(RuntimeException e) {
+        if (e instanceof IllegalArgumentException) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+        if (e instanceof IllegalStateException) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ApiResponse.error(e.getMessage()));
+        }
+        if (e.getMessage() != null && e.getMessage().contains("not found")) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error(e.getMessage()));
+        }
+        throw e;
+    }
 }
@@ -0,0 +1,11 @@
+package com.avatarstore.dto;
+
+import com.avatarstore.model.Avatar;
+
+import java.util.List;
+
+/**
+ * @param items      the avatars on this page, ordered by id
+ * @param nextCursor value to pass as "after" for the next page, or null if this is the last page
+ */
+public record AvatarPage(List<Avatar> items, Long nextCursor) {}
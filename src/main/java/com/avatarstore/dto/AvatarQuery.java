@@ -0,0 +1,19 @@
+package com.avatarstore.dto;
+
+import java.util.List;
+
+/**
+ * One page of a filtered avatar listing. Pages are ordered by id; the next page starts
+ * after the last id of the previous one (keyset pagination), so every page costs the same
+ * however deep into the catalog it is.
+ *
+ * @param after    return avatars with id greater than this (null for the first page)
+ * @param limit    maximum number of avatars on the page
+ * @param category only avatars in this category (null for any)
+ * @param platform only avatars for this platform (null for any)
+ * @param featured only featured / non-featured avatars (null for any)
+ * @param active   only active / inactive avatars (null for any)
+ * @param fields   JSON field names to return (null or empty for all); id is always included
+ */
+public record AvatarQuery(Long after, int limit, String category, String platform, Boolean featured,
+                          Boolean active, List<String> fields) {}
@@ -0,0 +1,16 @@
+package com.avatarstore.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Purchases to record for a completed Stripe Checkout Session, extracted from the
+ * verified webhook event.
+ */
+public record CheckoutFulfillment(String eventId, String sessionId, UUID userId, List<Long> versionIds) {
+
+    /** Key used to detect duplicate deliveries: one fulfillment per checkout session. */
+    public String dedupKey() {
+        return sessionId != null ? sessionId : eventId;
+    }
+}
@@ -0,0 +1,12 @@
+package com.avatarstore.dto;
+
+/**
+ * Starts a chunked upload session.
+ *
+ * @param path        object path within the bucket (null to generate one from filename)
+ * @param filename    original file name, used only to pick an extension for generated paths
+ * @param size        total size of the object in bytes
+ * @param contentType MIME type (null for application/octet-stream)
+ * @param sha256      expected SHA-256 of the whole object (hex); may instead be given on completion
+ */
+public record UploadSessionRequest(String path, String filename, Long size, String contentType, String sha256) {}
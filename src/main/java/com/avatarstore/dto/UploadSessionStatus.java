@@ -0,0 +1,18 @@
+package com.avatarstore.dto;
+
+import java.util.List;
+
+/**
+ * Progress of a chunked upload session. Clients resume an interrupted upload by
+ * re-sending only the missing ranges.
+ *
+ * @param uploadId session id
+ * @param path     object path the upload will be stored under
+ * @param size     total size of the object in bytes
+ * @param received number of bytes received so far
+ * @param missing  byte ranges (inclusive) not received yet, in order
+ */
+public record UploadSessionStatus(String uploadId, String path, long size, long received, List<ByteRange> missing) {
+
+    public record ByteRange(long start, long end) {}
+}
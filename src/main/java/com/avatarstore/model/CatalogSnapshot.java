@@ -0,0 +1,114 @@
+package com.avatarstore.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, fully materialized copy of the avatar catalog with hash indexes.
+ * A new snapshot is built off the request path and swapped in atomically, so
+ * readers never lock and never see a half-built catalog.
+ */
+public final class CatalogSnapshot {
+
+    private static final Comparator<AvatarVersion> VERSION_ORDER = Comparator
+            .comparing(AvatarVersion::getSortOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(AvatarVersion::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final long generation;
+    private final Instant loadedAt;
+    private final List<Avatar> avatars;
+    private final Map<Long, Avatar> avatarsById;
+    private final Map<String, Avatar> avatarsBySlug;
+    private final Map<Long, AvatarVersion> versionsById;
+    private final Map<Long, List<AvatarVersion>> versionsByAvatarId;
+    private final List<AvatarVersion> versions;
+
+    private CatalogSnapshot(long generation, List<Avatar> avatars, List<AvatarVersion> versions) {
+        this.generation = generation;
+        this.loadedAt = Instant.now();
+
+        List<Avatar> sortedAvatars = new ArrayList<>(avatars);
+        sortedAvatars.sort(Comparator.comparing(Avatar::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        Map<Long, Avatar> byId = new HashMap<>();
+        Map<String, Avatar> bySlug = new HashMap<>();
+        for (Avatar avatar : sortedAvatars) {
+            if (avatar.getId() != null) {
+                byId.put(avatar.getId(), avatar);
+            }
+            if (avatar.getSlug() != null) {
+                bySlug.put(avatar.getSlug(), avatar);
+            }
+        }
+
+        Map<Long, AvatarVersion> versionById = new HashMap<>();
+        Map<Long, List<AvatarVersion>> byAvatar = new HashMap<>();
+        for (AvatarVersion version : versions) {
+            if (version.getId() != null) {
+                versionById.put(version.getId(), version);
+            }
+            if (version.getAvatarId() != null) {
+                byAvatar.computeIfAbsent(version.getAvatarId(), k -> new ArrayList<>()).add(version);
+            }
+        }
+        Map<Long, List<AvatarVersion>> sortedByAvatar = new HashMap<>();
+        byAvatar.forEach((avatarId, list) -> {
+            list.sort(VERSION_ORDER);
+            sortedByAvatar.put(avatarId, List.copyOf(list));
+        });
+
+        this.avatars = List.copyOf(sortedAvatars);
+        this.avatarsById = Map.copyOf(byId);
+        this.avatarsBySlug = Map.copyOf(bySlug);
+        this.versionsById = Map.copyOf(versionById);
+        this.versionsByAvatarId = Map.copyOf(sortedByAvatar);
+        this.versions = List.copyOf(versions);
+    }
+
+    public static CatalogSnapshot of(long generation, List<Avatar> avatars, List<AvatarVersion> versions) {
+        return new CatalogSnapshot(generation, avatars, versions);
+    }
+
+    /** Monotonically increasing per reload; changes whenever a new snapshot is swapped in. */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    /** All avatars ordered by id. */
+    public List<Avatar> getAvatars() {
+        return avatars;
+    }
+
+    public Avatar getAvatarById(Long id) {
+        return id != null ? avatarsById.get(id) : null;
+    }
+
+    public Avatar getAvatarBySlug(String slug) {
+        return slug != null ? avatarsBySlug.get(slug) : null;
+    }
+
+    public AvatarVersion getVersionById(Long versionId) {
+        return versionId != null ? versionsById.get(versionId) : null;
+    }
+
+    /** Versions of an avatar ordered by sort_order (empty if none). */
+    public List<AvatarVersion> getVersionsByAvatarId(Long avatarId) {
+        return avatarId != null ? versionsByAvatarId.getOrDefault(avatarId, List.of()) : List.of();
+    }
+
+    /** All versions, in load order. */
+    public List<AvatarVersion> getVersions() {
+        return versions;
+    }
+
+    public int getVersionCount() {
+        return versionsById.size();
+    }
+}
@@ -1,34 +1,273 @@
 package com.avatarstore.service;
 
+import com.avatarstore.dto.AvatarPage;
+import com.avatarstore.dto.AvatarQuery;
 import com.avatarstore.model.Avatar;
 import com.avatarstore.model.AvatarVersion;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.avatarstore.model.AvatarVersionPair;
+import com.avatarstore.model.CatalogSnapshot;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AvatarService {
     
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    private static final String ALL_KEY = "all";
+
+    /** JSON field names of {@link Avatar} that may be requested with sparse field selection. */
+    public static final Set<String> AVATAR_FIELDS = Set.of("id", "name", "slug", "poster_url", "thumbnail_url",
+            "description", "short_description", "is_active", "is_featured", "category", "platform",
+            "created_at", "updated_at");
+
+    private final PostgrestClient postgrestClient;
+    private final MeterRegistry meterRegistry;
+    private final UpstreamFanOut upstreamFanOut;
+    private final UpstreamGuard upstreamGuard;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Value("${supabase.url:}")
     private String supabaseUrl;
     
     @Value("${supabase.service-role-key:}")
     private String serviceRoleKey;
+
+    @Value("${catalog.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${catalog.cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${catalog.cache.expire-after-write:10m}")
+    private Duration cacheExpireAfterWrite;
+
+    @Value("${catalog.cache.refresh-after-write:1m}")
+    private Duration cacheRefreshAfterWrite;
+
+    /** How long a catalog value may be served when Supabase is failing; 0 disables the fallback. */
+    @Value("${catalog.cache.stale-ttl:24h}")
+    private Duration cacheStaleTtl;
+
+    @Value("${catalog.page.default-limit:50}")
+    private int defaultPageLimit;
+
+    @Value("${catalog.page.max-limit:200}")
+    private int maxPageLimit;
+
+    @Value("${catalog.snapshot.enabled:false}")
+    private boolean snapshotEnabled;
+
+    @Value("${catalog.snapshot.refresh-interval:5m}")
+    private Duration snapshotRefreshInterval;
+
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong snapshotGeneration = new AtomicLong();
+    private ScheduledExecutorService snapshotLoader;
+
+    /** Last full loads of each table, so {@link CatalogChangedEvent} is only published on change. */
+    private final AtomicReference<List<Avatar>> loadedAvatars = new AtomicReference<>();
+    private final AtomicReference<List<AvatarVersion>> loadedVersions = new AtomicReference<>();
+
+    private LoadingCache<String, List<Avatar>> allAvatarsCache;
+    private LoadingCache<String, List<AvatarVersion>> allVersionsCache;
+    private LoadingCache<Long, Avatar> avatarByIdCache;
+    private LoadingCache<String, Avatar> avatarBySlugCache;
+    private LoadingCache<Long, AvatarVersion> versionByIdCache;
+    private LoadingCache<Long, List<AvatarVersion>> versionsByAvatarIdCache;
+    private LoadingCache<AvatarQuery, AvatarPage> avatarPageCache;
+
+    @PostConstruct
+    public void init() {
+        initCaches();
+        initSnapshot();
+    }
+
+    /**
+     * Builds the catalog caches. Each cache loads a missing key with a single upstream call
+     * (concurrent callers wait for it), refreshes entries in the background once they are
+     * older than refresh-after-write while still serving the old value, and drops entries
+     * after expire-after-write. Every loaded value is also kept for stale-ttl, and served
+     * instead when Supabase is failing or its circuit is open (see {@link #buildCache}).
+     */
+    private void initCaches() {
+        if (!cacheEnabled) {
+            log.info("Catalog cache disabled; every catalog read goes to Supabase");
+            return;
+        }
+        allAvatarsCache = buildCache("catalog.avatars.all", key -> fetchAllAvatars());
+        allVersionsCache = buildCache("catalog.versions.all", key -> fetchAllVersions());
+        avatarByIdCache = buildCache("catalog.avatars.by-id", this::fetchAvatarById, this::fetchAvatarsByIds);
+        avatarBySlugCache = buildCache("catalog.avatars.by-slug", this::fetchAvatarBySlug);
+        versionByIdCache = buildCache("catalog.versions.by-id", this::fetchVersionById, this::fetchVersionsByIds);
+        versionsByAvatarIdCache = buildCache("catalog.versions.by-avatar-id", this::fetchVersionsByAvatarId);
+        avatarPageCache = buildCache("catalog.avatars.pages", this::fetchAvatarPage);
+    }
+
+    /**
+     * In snapshot mode the whole catalog is loaded at startup and reloaded periodically on a
+     * background thread. Until the first load succeeds, reads fall back to the cache/direct path.
+     */
+    private void initSnapshot() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        snapshotLoader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-snapshot-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloadSnapshot();
+        long intervalMs = snapshotRefreshInterval.toMillis();
+        snapshotLoader.scheduleWithFixedDelay(this::reloadSnapshot, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdownSnapshotLoader() {
+        if (snapshotLoader != null) {
+            snapshotLoader.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads all avatars and versions and atomically swaps in a new snapshot. On failure the
+     * previous snapshot stays in place.
+     */
+    public void reloadSnapshot() {
+        try {
+            CatalogSnapshot next = upstreamFanOut.both(this::fetchAllAvatars, this::fetchAllVersions,
+                    (avatars, versions) -> CatalogSnapshot.of(snapshotGeneration.incrementAndGet(), avatars, versions));
+            snapshot.set(next);
+            log.info("Catalog snapshot {} loaded: {} avatars, {} versions",
+                    next.getGeneration(), next.getAvatars().size(), next.getVersionCount());
+        } catch (Exception e) {
+            log.error("Failed to reload catalog snapshot; keeping previous snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Schedules a snapshot reload on the loader thread (e.g. after a catalog edit).
+     */
+    private void requestSnapshotReload() {
+        if (snapshotLoader != null) {
+            snapshotLoader.execute(this::reloadSnapshot);
+        }
+    }
+
+    /**
+     * @return the current snapshot, or null if snapshot mode is off or nothing has loaded yet
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    private <K, V> LoadingCache<K, V> buildCache(String name, Function<K, V> loader) {
+        return buildCache(name, loader, null);
+    }
+
+    /**
+     * If a load fails because Supabase is down (5xx, I/O error, or rejected by the circuit
+     * breaker/bulkhead) the last value loaded for the key is returned instead, for up to
+     * stale-ttl; it goes back into the cache and is retried at the next refresh. Other
+     * failures, such as not found, are passed through.
+     *
+     * @param bulkLoader if non-null, used by getAll() to load all missing keys with one upstream call
+     */
+    private <K, V> LoadingCache<K, V> buildCache(String name, Function<K, V> loader,
+                                                 Function<Set<K>, Map<K, V>> bulkLoader) {
+        Cache<K, V> stale = cacheStaleTtl.isZero() ? null : Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheStaleTtl)
+                .build();
+        Counter staleServed = Counter.builder("catalog.cache.stale-served")
+                .description("Catalog values served from the stale copy while Supabase was failing")
+                .tag("cache", name)
+                .register(meterRegistry);
+        CacheLoader<K, V> cacheLoader = new CacheLoader<>() {
+            @Override
+            public V load(K key) {
+                try {
+                    V value = loader.apply(key);
+                    if (stale != null && value != null) {
+                        stale.put(key, value);
+                    }
+                    return value;
+                } catch (RuntimeException e) {
+                    V value = stale != null && UpstreamGuard.isUpstreamFailure(e) ? stale.getIfPresent(key) : null;
+                    if (value == null) {
+                        throw e;
+                    }
+                    log.debug("Serving stale catalog value: cache={}, key={}, cause={}", name, key, e.getMessage());
+                    staleServed.increment();
+                    return value;
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Map<? extends K, ? extends V> loadAll(Set<? extends K> keys) throws Exception {
+                if (bulkLoader == null) {
+                    return CacheLoader.super.loadAll(keys);
+                }
+                try {
+                    Map<K, V> values = bulkLoader.apply((Set<K>) keys);
+                    if (stale != null) {
+                        stale.putAll(values);
+                    }
+                    return values;
+                } catch (RuntimeException e) {
+                    Map<K, V> values = stale != null && UpstreamGuard.isUpstreamFailure(e)
+                            ? stale.getAllPresent(keys) : Map.of();
+                    // all or nothing: a partial result would read as "not found" for the rest
+                    if (values.isEmpty() || values.size() < keys.size()) {
+                        throw e;
+                    }
+                    log.debug("Serving stale catalog values: cache={}, keys={}, cause={}", name, keys.size(), e.getMessage());
+                    staleServed.increment(values.size());
+                    return values;
+                }
+            }
+        };
+        LoadingCache<K, V> cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheExpireAfterWrite)
+                .refreshAfterWrite(cacheRefreshAfterWrite)
+                .recordStats()
+                .build(cacheLoader);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        return cache;
+    }
     
     private void validateConfiguration() {
         if (supabaseUrl == null || supabaseUrl.trim().isEmpty()) {
@@ -57,19 +296,240 @@ public class AvatarService {
         return supabaseUrl + path;
     }
     
+    /**
+     * Catalog reads. Served from the catalog snapshot when one is loaded, otherwise from the
+     * in-process cache when catalog.cache.enabled is true; returned objects are shared between
+     * requests and must not be modified.
+     */
     public List<Avatar> getAllAvatars() {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            return current.getAvatars();
+        }
+        return cacheEnabled ? allAvatarsCache.get(ALL_KEY) : fetchAllAvatars();
+    }
+
+    public List<AvatarVersion> getAllVersions() {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            return current.getVersions();
+        }
+        return cacheEnabled ? allVersionsCache.get(ALL_KEY) : fetchAllVersions();
+    }
+
+    public Avatar getAvatarById(Long id) {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            Avatar avatar = current.getAvatarById(id);
+            if (avatar == null) throw new RuntimeException("Avatar not found");
+            return avatar;
+        }
+        return cacheEnabled ? avatarByIdCache.get(id) : fetchAvatarById(id);
+    }
+
+    public Avatar getAvatarBySlug(String slug) {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            Avatar avatar = current.getAvatarBySlug(slug);
+            if (avatar == null) throw new RuntimeException("Avatar not found");
+            return avatar;
+        }
+        return cacheEnabled ? avatarBySlugCache.get(slug) : fetchAvatarBySlug(slug);
+    }
+
+    public AvatarVersion getVersionById(Long versionId) {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            AvatarVersion version = current.getVersionById(versionId);
+            if (version == null) throw new RuntimeException("Avatar version not found");
+            return version;
+        }
+        return cacheEnabled ? versionByIdCache.get(versionId) : fetchVersionById(versionId);
+    }
+
+    public List<AvatarVersion> getVersionsByAvatarId(Long avatarId) {
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            return current.getVersionsByAvatarId(avatarId);
+        }
+        return cacheEnabled ? versionsByAvatarIdCache.get(avatarId) : fetchVersionsByAvatarId(avatarId);
+    }
+
+    /**
+     * One page of avatars matching the query's filters, ordered by id. The limit is clamped
+     * to catalog.page.max-limit (catalog.page.default-limit if not positive).
+     *
+     * @throws IllegalArgumentException if an unknown field is requested
+     */
+    public AvatarPage getAvatarPage(AvatarQuery query) {
+        AvatarQuery normalized = normalize(query);
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            return pageFromSnapshot(current, normalized);
+        }
+        return cacheEnabled ? avatarPageCache.get(normalized) : fetchAvatarPage(normalized);
+    }
+
+    /**
+     * Clamps the limit and canonicalises the field list (id first, then sorted), so equal
+     * queries share a cache entry.
+     */
+    private AvatarQuery normalize(AvatarQuery query) {
+        int limit = query.limit() <= 0 ? defaultPageLimit : Math.min(query.limit(), maxPageLimit);
+        List<String> fields = null;
+        if (query.fields() != null && !query.fields().isEmpty()) {
+            Set<String> selected = new TreeSet<>();
+            for (String field : query.fields()) {
+                String name = field.trim();
+                if (name.isEmpty()) continue;
+                if (!AVATAR_FIELDS.contains(name)) {
+                    throw new IllegalArgumentException("Unknown field: " + name);
+                }
+                if (!name.equals("id")) selected.add(name);
+            }
+            List<String> ordered = new ArrayList<>(selected.size() + 1);
+            ordered.add("id");
+            ordered.addAll(selected);
+            fields = List.copyOf(ordered);
+        }
+        return new AvatarQuery(query.after(), limit, blankToNull(query.category()), blankToNull(query.platform()),
+                query.featured(), query.active(), fields);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static AvatarPage pageFromSnapshot(CatalogSnapshot current, AvatarQuery query) {
+        List<Avatar> avatars = current.getAvatars();
+        // first index with id > after (avatars are sorted by id)
+        int lo = 0;
+        int hi = avatars.size();
+        if (query.after() != null) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                Long id = avatars.get(mid).getId();
+                if (id != null && id <= query.after()) lo = mid + 1;
+                else hi = mid;
+            }
+        }
+        List<Avatar> items = new ArrayList<>(Math.min(query.limit(), avatars.size() - lo));
+        for (int i = lo; i < avatars.size(); i++) {
+            Avatar avatar = avatars.get(i);
+            if (!matches(avatar, query)) continue;
+            if (items.size() == query.limit()) {
+                return new AvatarPage(List.copyOf(items), items.get(items.size() - 1).getId());
+            }
+            items.add(avatar);
+        }
+        return new AvatarPage(List.copyOf(items), null);
+    }
+
+    private static boolean matches(Avatar avatar, AvatarQuery query) {
+        return avatar.getId() != null
+                && (query.category() == null || query.category().equals(avatar.getCategory()))
+                && (query.platform() == null || query.platform().equals(avatar.getPlatform()))
+                && (query.featured() == null || query.featured().equals(avatar.getIsFeatured()))
+                && (query.active() == null || query.active().equals(avatar.getIsActive()));
+    }
+
+    /**
+     * Batch lookup of avatars by id. Ids that do not exist are absent from the result.
+     * Costs at most one upstream call regardless of how many ids are requested.
+     */
+    public Map<Long, Avatar> getAvatarsByIds(Collection<Long> ids) {
+        Set<Long> keys = distinctIds(ids);
+        if (keys.isEmpty()) return Map.of();
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            Map<Long, Avatar> result = new HashMap<>();
+            for (Long id : keys) {
+                Avatar avatar = current.getAvatarById(id);
+                if (avatar != null) result.put(id, avatar);
+            }
+            return result;
+        }
+        return cacheEnabled ? avatarByIdCache.getAll(keys) : fetchAvatarsByIds(keys);
+    }
+
+    /**
+     * Batch lookup of versions by id. Ids that do not exist are absent from the result.
+     * Costs at most one upstream call regardless of how many ids are requested.
+     */
+    public Map<Long, AvatarVersion> getVersionsByIds(Collection<Long> versionIds) {
+        Set<Long> keys = distinctIds(versionIds);
+        if (keys.isEmpty()) return Map.of();
+        CatalogSnapshot current = snapshot.get();
+        if (current != null) {
+            Map<Long, AvatarVersion> result = new HashMap<>();
+            for (Long id : keys) {
+                AvatarVersion version = current.getVersionById(id);
+                if (version != null) result.put(id, version);
+            }
+            return result;
+        }
+        return cacheEnabled ? versionByIdCache.getAll(keys) : fetchVersionsByIds(keys);
+    }
+
+    /**
+     * Resolves each version id to its version and parent avatar, in the given order, using
+     * two batch lookups (versions, then avatars).
+     *
+     * @throws RuntimeException "not found" if any version or avatar does not exist
+     */
+    public List<AvatarVersionPair> getVersionPairs(List<Long> versionIds) {
+        Map<Long, AvatarVersion> versions = getVersionsByIds(versionIds);
+        for (Long versionId : versionIds) {
+            if (!versions.containsKey(versionId)) throw new RuntimeException("Avatar version not found: " + versionId);
+        }
+        Map<Long, Avatar> avatars = getAvatarsByIds(versions.values().stream().map(AvatarVersion::getAvatarId).toList());
+        List<AvatarVersionPair> pairs = new ArrayList<>(versionIds.size());
+        for (Long versionId : versionIds) {
+            AvatarVersion version = versions.get(versionId);
+            Avatar avatar = avatars.get(version.getAvatarId());
+            if (avatar == null) throw new RuntimeException("Avatar not found for version: " + versionId);
+            pairs.add(new AvatarVersionPair(avatar, version));
+        }
+        return pairs;
+    }
+
+    private static Set<Long> distinctIds(Collection<Long> ids) {
+        Set<Long> keys = new LinkedHashSet<>();
+        if (ids != null) {
+            for (Long id : ids) {
+                if (id != null) keys.add(id);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Drops all cached catalog entries and reloads the snapshot, so edits made directly in
+     * Supabase show up before the caches would refresh on their own (POST /avatars/cache/invalidate).
+     */
+    public void invalidateCaches() {
+        requestSnapshotReload();
+        if (!cacheEnabled) {
+            return;
+        }
+        allAvatarsCache.invalidateAll();
+        allVersionsCache.invalidateAll();
+        avatarByIdCache.invalidateAll();
+        avatarBySlugCache.invalidateAll();
+        versionByIdCache.invalidateAll();
+        versionsByAvatarIdCache.invalidateAll();
+        avatarPageCache.invalidateAll();
+    }
+    
+    private List<Avatar> fetchAllAvatars() {
+        List<Avatar> avatars;
         try {
             String url = buildUrl("/rest/v1/avatars?order=id.asc");
             log.debug("Fetching avatars from URL: {}", url);
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) {
-                log.warn("Received empty response from Supabase");
-                return List.of();
-            }
-            
-            return objectMapper.readValue(response.getBody(), new TypeReference<List<Avatar>>() {});
+            avatars = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "avatars.list",
+                    () -> postgrestClient.getList(url, createHeaders(), Avatar.class));
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (IllegalStateException e) {
             log.error("Configuration error: {}", e.getMessage());
             throw e;
@@ -77,24 +537,24 @@ public class AvatarService {
             log.error("Error fetching avatars from Supabase. URL: {}, Error: {}", supabaseUrl, e.getMessage(), e);
             throw new RuntimeException("Failed to fetch avatars: " + e.getMessage(), e);
         }
+        if (!avatars.equals(loadedAvatars.getAndSet(avatars))) {
+            eventPublisher.publishEvent(new CatalogChangedEvent(avatars, null));
+        }
+        return avatars;
     }
     
-    public Avatar getAvatarById(Long id) {
+    private Avatar fetchAvatarById(Long id) {
         try {
             String url = buildUrl("/rest/v1/avatars?id=eq." + id);
             log.debug("Fetching avatar by id from URL: {}", url);
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) {
-                throw new RuntimeException("Avatar not found");
-            }
-            
-            List<Avatar> avatars = objectMapper.readValue(response.getBody(), new TypeReference<List<Avatar>>() {});
+            List<Avatar> avatars = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "avatars.get",
+                    () -> postgrestClient.getList(url, createHeaders(), Avatar.class));
             if (avatars.isEmpty()) {
                 throw new RuntimeException("Avatar not found");
             }
             return avatars.get(0);
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (IllegalStateException e) {
             log.error("Configuration error: {}", e.getMessage());
             throw e;
@@ -106,19 +566,15 @@ public class AvatarService {
         }
     }
     
-    public AvatarVersion getVersionById(Long versionId) {
+    private AvatarVersion fetchVersionById(Long versionId) {
         try {
             String url = buildUrl("/rest/v1/avatar_versions?id=eq." + versionId);
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) {
-                throw new RuntimeException("Avatar version not found");
-            }
-
-            List<AvatarVersion> versions = objectMapper.readValue(response.getBody(), new TypeReference<List<AvatarVersion>>() {});
+            List<AvatarVersion> versions = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "versions.get",
+                    () -> postgrestClient.getList(url, createHeaders(), AvatarVersion.class));
             if (versions.isEmpty()) throw new RuntimeException("Avatar version not found");
             return versions.get(0);
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (RuntimeException e) {
             throw e;
         } catch (Exception e) {
@@ -127,44 +583,160 @@ public class AvatarService {
         }
     }
 
-    public List<AvatarVersion> getVersionsByAvatarId(Long avatarId) {
+    private List<AvatarVersion> fetchVersionsByAvatarId(Long avatarId) {
         try {
             String url = buildUrl("/rest/v1/avatar_versions?avatar_id=eq." + avatarId + "&order=sort_order.asc");
             log.debug("Fetching versions for avatar {} from URL: {}", avatarId, url);
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
+            return upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "versions.by-avatar",
+                    () -> postgrestClient.getList(url, createHeaders(), AvatarVersion.class));
+        } catch (UpstreamUnavailableException e) {
+            throw e;
+        } catch (IllegalStateException e) {
+            log.error("Configuration error: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching versions for avatar {}: {}", avatarId, e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch avatar versions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fetches avatars by id, splitting large id sets into concurrent in.(...) requests.
+     */
+    private Map<Long, Avatar> fetchAvatarsByIds(Set<Long> ids) {
+        return fetchInBatches(ids, this::fetchAvatarBatch);
+    }
+
+    private Map<Long, AvatarVersion> fetchVersionsByIds(Set<Long> versionIds) {
+        return fetchInBatches(versionIds, this::fetchVersionBatch);
+    }
 
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) {
-                return List.of();
+    private <V> Map<Long, V> fetchInBatches(Set<Long> ids, Function<Set<Long>, Map<Long, V>> fetchBatch) {
+        List<Set<Long>> batches = upstreamFanOut.batches(ids);
+        if (batches.size() == 1) {
+            return fetchBatch.apply(batches.get(0));
+        }
+        List<Map<Long, V>> results = upstreamFanOut.all(batches.stream()
+                .map(batch -> (Supplier<Map<Long, V>>) () -> fetchBatch.apply(batch))
+                .toList());
+        Map<Long, V> merged = new HashMap<>();
+        results.forEach(merged::putAll);
+        return merged;
+    }
+
+    private Map<Long, Avatar> fetchAvatarBatch(Set<Long> ids) {
+        try {
+            String url = buildUrl("/rest/v1/avatars?id=in.(" + joinIds(ids) + ")");
+            log.debug("Fetching {} avatars by id from URL: {}", ids.size(), url);
+            List<Avatar> avatars = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "avatars.batch",
+                    () -> postgrestClient.getList(url, createHeaders(), Avatar.class));
+            return avatars.stream().collect(Collectors.toMap(Avatar::getId, a -> a, (a, b) -> a));
+        } catch (UpstreamUnavailableException e) {
+            throw e;
+        } catch (IllegalStateException e) {
+            log.error("Configuration error: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching avatars by ids {}: {}", ids, e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch avatars: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<Long, AvatarVersion> fetchVersionBatch(Set<Long> versionIds) {
+        try {
+            String url = buildUrl("/rest/v1/avatar_versions?id=in.(" + joinIds(versionIds) + ")");
+            log.debug("Fetching {} avatar versions by id from URL: {}", versionIds.size(), url);
+            List<AvatarVersion> versions = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "versions.batch",
+                    () -> postgrestClient.getList(url, createHeaders(), AvatarVersion.class));
+            return versions.stream().collect(Collectors.toMap(AvatarVersion::getId, v -> v, (a, b) -> a));
+        } catch (UpstreamUnavailableException e) {
+            throw e;
+        } catch (IllegalStateException e) {
+            log.error("Configuration error: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching avatar versions by ids {}: {}", versionIds, e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch avatar versions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fetches one page with a keyset condition (id &gt; after) and limit + 1 rows; the extra
+     * row only tells whether there is a next page. Filters and field selection are pushed
+     * down to PostgREST.
+     */
+    private AvatarPage fetchAvatarPage(AvatarQuery query) {
+        try {
+            StringBuilder path = new StringBuilder("/rest/v1/avatars?order=id.asc&limit=").append(query.limit() + 1);
+            if (query.fields() != null) path.append("&select=").append(String.join(",", query.fields()));
+            if (query.after() != null) path.append("&id=gt.").append(query.after());
+            if (query.category() != null) path.append("&category=eq.").append(encode(query.category()));
+            if (query.platform() != null) path.append("&platform=eq.").append(encode(query.platform()));
+            if (query.featured() != null) path.append("&is_featured=is.").append(query.featured());
+            if (query.active() != null) path.append("&is_active=is.").append(query.active());
+            String url = buildUrl(path.toString());
+            log.debug("Fetching avatar page from URL: {}", url);
+            List<Avatar> rows = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "avatars.page",
+                    () -> postgrestClient.getList(url, createHeaders(), Avatar.class));
+            if (rows.size() <= query.limit()) {
+                return new AvatarPage(rows, null);
             }
+            List<Avatar> items = rows.subList(0, query.limit());
+            return new AvatarPage(List.copyOf(items), items.get(items.size() - 1).getId());
+        } catch (UpstreamUnavailableException e) {
+            throw e;
+        } catch (IllegalStateException e) {
+            log.error("Configuration error: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error fetching avatar page {}: {}", query, e.getMessage(), e);
+            throw new RuntimeException("Failed to fetch avatars: " + e.getMessage(), e);
+        }
+    }
+
+    private static String encode(String value) {
+        return java.net.URLEncoder.encode(value, java.nio.charset.StandardCharsets.UTF_8);
+    }
 
-            return objectMapper.readValue(response.getBody(), new TypeReference<List<AvatarVersion>>() {});
+    private static String joinIds(Collection<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private List<AvatarVersion> fetchAllVersions() {
+        List<AvatarVersion> versions;
+        try {
+            String url = buildUrl("/rest/v1/avatar_versions?order=avatar_id.asc,sort_order.asc");
+            log.debug("Fetching all avatar versions from URL: {}", url);
+            versions = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "versions.list",
+                    () -> postgrestClient.getList(url, createHeaders(), AvatarVersion.class));
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (IllegalStateException e) {
             log.error("Configuration error: {}", e.getMessage());
             throw e;
         } catch (Exception e) {
-            log.error("Error fetching versions for avatar {}: {}", avatarId, e.getMessage(), e);
+            log.error("Error fetching all avatar versions: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to fetch avatar versions: " + e.getMessage(), e);
         }
+        if (!versions.equals(loadedVersions.getAndSet(versions))) {
+            eventPublisher.publishEvent(new CatalogChangedEvent(null, versions));
+        }
+        return versions;
     }
 
-    public Avatar getAvatarBySlug(String slug) {
+    private Avatar fetchAvatarBySlug(String slug) {
         try {
             String encodedSlug = java.net.URLEncoder.encode(slug, java.nio.charset.StandardCharsets.UTF_8);
             String url = buildUrl("/rest/v1/avatars?slug=eq." + encodedSlug);
             log.debug("Fetching avatar by slug from URL: {}", url);
-            HttpEntity<String> entity = new HttpEntity<>(createHeaders());
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) {
-                throw new RuntimeException("Avatar not found");
-            }
-            
-            List<Avatar> avatars = objectMapper.readValue(response.getBody(), new TypeReference<List<Avatar>>() {});
+            List<Avatar> avatars = upstreamGuard.call(UpstreamGuard.Compartment.CATALOG, "avatars.by-slug",
+                    () -> postgrestClient.getList(url, createHeaders(), Avatar.class));
             if (avatars.isEmpty()) {
                 throw new RuntimeException("Avatar not found");
             }
             return avatars.get(0);
+        } catch (UpstreamUnavailableException e) {
+            throw e;
         } catch (IllegalStateException e) {
             log.error("Configuration error: {}", e.getMessage());
             throw e;
@@ -0,0 +1,14 @@
+package com.avatarstore.service;
+
+import com.avatarstore.model.Avatar;
+import com.avatarstore.model.AvatarVersion;
+
+import java.util.List;
+
+/**
+ * Published by {@link AvatarService} when a full load of the avatars or versions table from
+ * Supabase (cache load or refresh, snapshot reload, or uncached read) returns something other
+ * than the previous full load. Carries the new list; the other one is null if it did not change.
+ */
+public record CatalogChangedEvent(List<Avatar> avatars, List<AvatarVersion> versions) {
+}
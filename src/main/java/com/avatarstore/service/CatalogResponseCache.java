@@ -0,0 +1,206 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.ApiResponse;
+import com.avatarstore.model.Avatar;
+import com.avatarstore.model.AvatarVersion;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pre-serialized response bodies for the catalog endpoints. Each body is serialized,
+ * gzipped and hashed into a strong ETag once per catalog change and then served as raw
+ * bytes, so a request costs neither JSON serialization nor compression, and clients that
+ * already have the current version get a 304. A body is reused for as long as
+ * {@link AvatarService} returns the same data (the same instance, or an equal one when
+ * the catalog cache is off).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogResponseCache {
+
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+
+    private final AvatarService avatarService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${catalog.prepared-response.enabled:true}")
+    private boolean enabled;
+
+    @Value("${catalog.cache.max-size:10000}")
+    private long maxSize;
+
+    /** How long browsers and CDNs may reuse a catalog response before revalidating (0 = always revalidate). */
+    @Value("${catalog.http.max-age:60s}")
+    private Duration maxAge;
+
+    private final AtomicReference<PreparedBody> allAvatars = new AtomicReference<>();
+    /** Per-avatar bodies, keyed by "versions:{avatarId}" or "slug:{slug}". */
+    private Cache<String, PreparedBody> bodies;
+
+    /**
+     * A serialized response body.
+     *
+     * @param source  the data it was serialized from
+     * @param json    the ApiResponse JSON, UTF-8
+     * @param gzipped the same bytes, gzip-compressed
+     * @param etag    strong ETag (quoted) of the JSON representation
+     */
+    public record PreparedBody(Object source, byte[] json, byte[] gzipped, String etag) {
+
+        /**
+         * @return strong ETag (quoted) of the gzip representation, which must differ from the JSON one
+         */
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+        }
+
+        /**
+         * @return true if the If-None-Match header lists either representation of this body
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*")) {
+                    return true;
+                }
+                // If-None-Match uses weak comparison
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag) || tag.equals(gzipEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        bodies = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, bodies, "catalog.responses");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Cache-Control for catalog responses; they are public and revalidated with the ETag
+     */
+    public CacheControl getCacheControl() {
+        if (maxAge.isZero()) {
+            return CacheControl.noCache().cachePublic();
+        }
+        return CacheControl.maxAge(maxAge).cachePublic();
+    }
+
+    /**
+     * @return the {@code ApiResponse<List<Avatar>>} body for all avatars
+     * @throws RuntimeException if the catalog could not be loaded
+     */
+    public PreparedBody getAllAvatarsBody() {
+        List<Avatar> avatars = avatarService.getAllAvatars();
+        PreparedBody current = allAvatars.get();
+        if (isCurrent(current, avatars)) {
+            return current;
+        }
+        PreparedBody next = prepare(avatars, ApiResponse.success(avatars, avatars.size()));
+        // a concurrent caller may prepare the same list; either result is correct
+        allAvatars.set(next);
+        log.debug("Prepared GET /avatars body: {} avatars, {} bytes, {} gzipped, etag={}",
+                avatars.size(), next.json().length, next.gzipped().length, next.etag());
+        return next;
+    }
+
+    /**
+     * @return the {@code ApiResponse<List<AvatarVersion>>} body for an avatar's versions
+     * @throws RuntimeException if the versions could not be loaded
+     */
+    public PreparedBody getVersionsBody(Long avatarId) {
+        List<AvatarVersion> versions = avatarService.getVersionsByAvatarId(avatarId);
+        return getOrPrepare("versions:" + avatarId, versions, () -> ApiResponse.success(versions, versions.size()));
+    }
+
+    /**
+     * @return the {@code ApiResponse<List<Avatar>>} body (a single avatar) for a slug
+     * @throws RuntimeException "Avatar not found" if there is no such avatar
+     */
+    public PreparedBody getAvatarBySlugBody(String slug) {
+        Avatar avatar = avatarService.getAvatarBySlug(slug);
+        return getOrPrepare("slug:" + slug, avatar, () -> ApiResponse.success(List.of(avatar), 1));
+    }
+
+    private PreparedBody getOrPrepare(String key, Object source, Supplier<Object> body) {
+        PreparedBody current = bodies.getIfPresent(key);
+        if (isCurrent(current, source)) {
+            return current;
+        }
+        PreparedBody next = prepare(source, body.get());
+        bodies.put(key, next);
+        return next;
+    }
+
+    private static boolean isCurrent(PreparedBody current, Object source) {
+        return current != null && (current.source() == source || current.source().equals(source));
+    }
+
+    private PreparedBody prepare(Object source, Object body) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            return new PreparedBody(source, json, compressed.toByteArray(), etag(json));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize catalog response: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** First 128 bits of the SHA-256 of the payload. */
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
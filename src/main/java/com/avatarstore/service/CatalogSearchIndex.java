@@ -0,0 +1,414 @@
+package com.avatarstore.service;
+
+import com.avatarstore.model.Avatar;
+import com.avatarstore.model.AvatarVersion;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index over the avatar catalog (name, short description, description,
+ * category and version names). Queries match whole terms, prefixes and terms one edit away,
+ * are scored by field weight and inverse document frequency, and return the top k avatars,
+ * all without calling Supabase.
+ * <p>
+ * The index is built once at startup and then follows the catalog without polling: whenever
+ * {@link AvatarService} loads a changed avatars or versions table (a cache refresh, snapshot
+ * reload or uncached read), the {@link CatalogChangedEvent} carries the new rows, and only
+ * avatars that were added, changed or removed are re-indexed. Updates run on one background
+ * thread.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogSearchIndex {
+
+    private static final float NAME_WEIGHT = 5f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float SHORT_DESCRIPTION_WEIGHT = 2f;
+    private static final float VERSION_NAME_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+
+    /** A prefix match scores this much of an exact match, scaled by how much of the term it covers. */
+    private static final float PREFIX_FACTOR = 0.6f;
+    /** A match one edit away scores this much of an exact match. */
+    private static final float FUZZY_FACTOR = 0.4f;
+    /** Query terms shorter than this are not matched fuzzily (too many false positives). */
+    private static final int MIN_FUZZY_LENGTH = 4;
+    /** Bounds the work of very short prefixes such as "a". */
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final AvatarService avatarService;
+
+    @Value("${catalog.search.enabled:true}")
+    private boolean enabled;
+
+    /** Delay before retrying the initial build after a failure. */
+    @Value("${catalog.search.retry-interval:1m}")
+    private Duration retryInterval;
+
+    @Value("${catalog.search.default-limit:20}")
+    private int defaultLimit;
+
+    @Value("${catalog.search.max-limit:100}")
+    private int maxLimit;
+
+    /** Guards postings, deletes and docs. Only the indexer thread writes. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** term -> avatar id -> weight of the term in that avatar; sorted for prefix lookups */
+    private final TreeMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    /** term with one character deleted -> indexed terms it came from (edit-distance-1 candidates) */
+    private final Map<String, Set<String>> deletes = new HashMap<>();
+    private final Map<Long, Doc> docs = new HashMap<>();
+
+    private volatile boolean ready;
+    /** The rows last indexed; only used on the indexer thread. */
+    private List<Avatar> indexedAvatars;
+    private List<AvatarVersion> indexedVersions;
+    private ScheduledExecutorService indexer;
+
+    private record Doc(Avatar avatar, List<AvatarVersion> versions, Map<String, Float> terms) {}
+
+    private record Hit(Avatar avatar, int matchedTerms, float score) {}
+
+    private static final Comparator<Hit> RANKING = Comparator.comparingInt(Hit::matchedTerms)
+            .thenComparingDouble(Hit::score)
+            .thenComparing(hit -> -hit.avatar().getId());
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        indexer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        indexer.execute(this::build);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (indexer != null) {
+            indexer.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies a catalog change on the indexer thread. Changes that arrive before the initial
+     * build are kept and indexed once both tables are known.
+     */
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (indexer == null) {
+            return;
+        }
+        indexer.execute(() -> {
+            if (event.avatars() != null) indexedAvatars = event.avatars();
+            if (event.versions() != null) indexedVersions = event.versions();
+            if (indexedAvatars != null && indexedVersions != null) {
+                update(indexedAvatars, indexedVersions);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return false until the first successful build (searches then return nothing)
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Initial build from the catalog as {@link AvatarService} serves it; retried after
+     * retry-interval until it succeeds (or a change event has built the index).
+     */
+    private void build() {
+        if (ready) {
+            return;
+        }
+        try {
+            List<Avatar> avatars = avatarService.getAllAvatars();
+            List<AvatarVersion> versions = avatarService.getAllVersions();
+            if (indexedAvatars == null) indexedAvatars = avatars;
+            if (indexedVersions == null) indexedVersions = versions;
+            update(indexedAvatars, indexedVersions);
+        } catch (Exception e) {
+            log.error("Failed to build search index; retrying in {}: {}", retryInterval, e.getMessage(), e);
+            indexer.schedule(this::build, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Brings the index in line with the given catalog, re-indexing only avatars whose data
+     * (or versions) changed. Runs on the indexer thread.
+     */
+    private void update(List<Avatar> avatars, List<AvatarVersion> allVersions) {
+        try {
+            Map<Long, List<AvatarVersion>> versionsByAvatar = new HashMap<>();
+            for (AvatarVersion version : allVersions) {
+                if (version.getAvatarId() != null) {
+                    versionsByAvatar.computeIfAbsent(version.getAvatarId(), k -> new ArrayList<>()).add(version);
+                }
+            }
+
+            // docs is only modified on this thread, so it can be read here without the lock
+            Map<Long, Doc> changed = new HashMap<>();
+            Set<Long> present = new HashSet<>();
+            for (Avatar avatar : avatars) {
+                if (avatar.getId() == null) continue;
+                present.add(avatar.getId());
+                List<AvatarVersion> versions = versionsByAvatar.getOrDefault(avatar.getId(), List.of());
+                Doc existing = docs.get(avatar.getId());
+                if (existing != null && existing.avatar().equals(avatar) && existing.versions().equals(versions)) {
+                    continue;
+                }
+                changed.put(avatar.getId(), new Doc(avatar, versions, terms(avatar, versions)));
+            }
+            List<Long> removed = docs.keySet().stream().filter(id -> !present.contains(id)).toList();
+
+            if (!changed.isEmpty() || !removed.isEmpty()) {
+                lock.writeLock().lock();
+                try {
+                    for (Long id : removed) {
+                        unindex(docs.remove(id));
+                    }
+                    for (Doc doc : changed.values()) {
+                        Doc previous = docs.put(doc.avatar().getId(), doc);
+                        if (previous != null) {
+                            unindex(previous);
+                        }
+                        index(doc);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Search index updated: {} added/changed, {} removed; {} avatars, {} terms",
+                        changed.size(), removed.size(), docs.size(), postings.size());
+            }
+            ready = true;
+        } catch (RuntimeException e) {
+            log.error("Failed to update search index; keeping previous index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the best matches for a free-text query, best first. Avatars matching more of the
+     * query's terms rank above those matching fewer; ties are broken by score.
+     *
+     * @param limit maximum number of results (clamped to catalog.search.max-limit; default if not positive)
+     */
+    public List<Avatar> search(String query, int limit) {
+        int k = limit <= 0 ? defaultLimit : Math.min(limit, maxLimit);
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            double docCount = docs.size();
+            Map<Long, Integer> matched = new HashMap<>();
+            Map<Long, Float> scores = new HashMap<>();
+            for (String queryTerm : queryTerms) {
+                Map<Long, Float> best = new HashMap<>();
+                for (Map.Entry<String, Float> match : expand(queryTerm).entrySet()) {
+                    Map<Long, Float> docsWithTerm = postings.get(match.getKey());
+                    float idf = (float) Math.log(1 + docCount / docsWithTerm.size());
+                    for (Map.Entry<Long, Float> posting : docsWithTerm.entrySet()) {
+                        best.merge(posting.getKey(), posting.getValue() * match.getValue() * idf, Math::max);
+                    }
+                }
+                best.forEach((id, score) -> {
+                    matched.merge(id, 1, Integer::sum);
+                    scores.merge(id, score, Float::sum);
+                });
+            }
+            PriorityQueue<Hit> top = new PriorityQueue<>(k + 1, RANKING);
+            for (Map.Entry<Long, Float> entry : scores.entrySet()) {
+                top.add(new Hit(docs.get(entry.getKey()).avatar(), matched.get(entry.getKey()), entry.getValue()));
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+            List<Avatar> results = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                results.add(top.poll().avatar());
+            }
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexed terms matching a query term, with their match factor: 1 for the term itself,
+     * {@link #PREFIX_FACTOR} (scaled) for terms it is a prefix of, {@link #FUZZY_FACTOR} for
+     * terms one insertion, deletion, substitution or transposition away.
+     */
+    private Map<String, Float> expand(String queryTerm) {
+        Map<String, Float> matches = new HashMap<>();
+        if (postings.containsKey(queryTerm)) {
+            matches.put(queryTerm, 1f);
+        }
+        int expansions = 0;
+        for (String term : postings.subMap(queryTerm, false, queryTerm + Character.MAX_VALUE, false).keySet()) {
+            if (++expansions > MAX_PREFIX_EXPANSIONS) break;
+            matches.putIfAbsent(term, PREFIX_FACTOR * queryTerm.length() / term.length());
+        }
+        if (queryTerm.length() >= MIN_FUZZY_LENGTH) {
+            Set<String> candidates = new HashSet<>(deletes.getOrDefault(queryTerm, Set.of()));
+            for (String variant : deletionsOf(queryTerm)) {
+                if (postings.containsKey(variant)) {
+                    candidates.add(variant);
+                }
+                candidates.addAll(deletes.getOrDefault(variant, Set.of()));
+            }
+            for (String term : candidates) {
+                if (!matches.containsKey(term) && withinOneEdit(queryTerm, term)) {
+                    matches.put(term, FUZZY_FACTOR);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private void index(Doc doc) {
+        Long id = doc.avatar().getId();
+        doc.terms().forEach((term, weight) -> {
+            Map<Long, Float> docsWithTerm = postings.get(term);
+            if (docsWithTerm == null) {
+                docsWithTerm = new HashMap<>();
+                postings.put(term, docsWithTerm);
+                for (String variant : deletionsOf(term)) {
+                    deletes.computeIfAbsent(variant, k -> new HashSet<>()).add(term);
+                }
+            }
+            docsWithTerm.put(id, weight);
+        });
+    }
+
+    private void unindex(Doc doc) {
+        Long id = doc.avatar().getId();
+        for (String term : doc.terms().keySet()) {
+            Map<Long, Float> docsWithTerm = postings.get(term);
+            if (docsWithTerm == null) continue;
+            docsWithTerm.remove(id);
+            if (docsWithTerm.isEmpty()) {
+                postings.remove(term);
+                for (String variant : deletionsOf(term)) {
+                    Set<String> terms = deletes.get(variant);
+                    if (terms != null && terms.remove(term) && terms.isEmpty()) {
+                        deletes.remove(variant);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<String, Float> terms(Avatar avatar, List<AvatarVersion> versions) {
+        Map<String, Float> terms = new HashMap<>();
+        addField(terms, avatar.getName(), NAME_WEIGHT);
+        addField(terms, avatar.getCategory(), CATEGORY_WEIGHT);
+        addField(terms, avatar.getShortDescription(), SHORT_DESCRIPTION_WEIGHT);
+        addField(terms, avatar.getDescription(), DESCRIPTION_WEIGHT);
+        Set<String> versionTerms = new HashSet<>();
+        for (AvatarVersion version : versions) {
+            versionTerms.addAll(tokenize(version.getName()));
+        }
+        for (String term : versionTerms) {
+            terms.merge(term, VERSION_NAME_WEIGHT, Float::sum);
+        }
+        return terms;
+    }
+
+    /** Each distinct term counts once per field. */
+    private static void addField(Map<String, Float> terms, String text, float weight) {
+        for (String term : new HashSet<>(tokenize(text))) {
+            terms.merge(term, weight, Float::sum);
+        }
+    }
+
+    /** Lower-cases, strips accents and splits on anything that is not a letter or digit. */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(folded.toLowerCase())) {
+            if (token.length() >= 2 || (!token.isEmpty() && Character.isDigit(token.charAt(0)))) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> deletionsOf(String term) {
+        if (term.length() < MIN_FUZZY_LENGTH - 1) {
+            return List.of();
+        }
+        List<String> variants = new ArrayList<>(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            variants.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return variants;
+    }
+
+    /** Optimal string alignment distance &lt;= 1 (insert, delete, substitute or swap adjacent). */
+    private static boolean withinOneEdit(String a, String b) {
+        int lengthDiff = a.length() - b.length();
+        if (Math.abs(lengthDiff) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (lengthDiff > 0) {
+            return a.substring(i + 1).equals(b.substring(i));
+        }
+        if (lengthDiff < 0) {
+            return a.substring(i).equals(b.substring(i + 1));
+        }
+        if (i == a.length()) {
+            return true;
+        }
+        if (a.substring(i + 1).equals(b.substring(i + 1))) {
+            return true;
+        }
+        return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                && a.substring(i + 2).equals(b.substring(i + 2));
+    }
+}
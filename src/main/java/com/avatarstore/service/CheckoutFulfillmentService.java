@@ -0,0 +1,258 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.CheckoutFulfillment;
+import com.avatarstore.model.AvatarVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records purchases for completed Stripe Checkout Sessions. With the queue enabled, the
+ * webhook only verifies and journals the job; a small worker pool records it afterwards,
+ * and unfinished jobs are replayed after a restart.
+ * <p>
+ * Once the webhook has been acknowledged Stripe never redelivers the event, so a queued job
+ * is never dropped. Upstream failures (5xx, I/O errors, timeouts, rejected calls) are retried
+ * with exponential backoff, then every max-backoff for as long as they last; after
+ * alert-after-attempts each retry is logged as an error. Any other error (e.g. an unknown
+ * version id) would fail the same way every time, so the job is moved to the dead-letter
+ * file instead, from where {@link #replayDeadLetters()} queues it again once fixed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CheckoutFulfillmentService {
+
+    private final PurchaseService purchaseService;
+    private final AvatarService avatarService;
+    private final WebhookJournal webhookJournal;
+    private final WebhookDedupStore webhookDedupStore;
+    private final UpstreamFanOut upstreamFanOut;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stripe.webhook.queue.enabled:true}")
+    private boolean queueEnabled;
+
+    @Value("${stripe.webhook.queue.workers:4}")
+    private int workers;
+
+    /** Retries of a failing job are logged as errors from this attempt on. */
+    @Value("${stripe.webhook.queue.alert-after-attempts:10}")
+    private int alertAfterAttempts;
+
+    @Value("${stripe.webhook.queue.initial-backoff:1s}")
+    private Duration initialBackoff;
+
+    @Value("${stripe.webhook.queue.max-backoff:5m}")
+    private Duration maxBackoff;
+
+    private ScheduledThreadPoolExecutor executor;
+    private Counter deadLettered;
+    /** Jobs whose last attempt failed and that are waiting for a retry. */
+    private final AtomicInteger retrying = new AtomicInteger();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!queueEnabled) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(workers, r -> {
+            Thread thread = new Thread(r, "webhook-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadLettered = Counter.builder("webhook.jobs.dead-lettered")
+                .description("Webhook jobs moved to the dead-letter file")
+                .register(meterRegistry);
+        Gauge.builder("webhook.jobs.dead-letter", webhookJournal, WebhookJournal::deadLetterCount)
+                .description("Webhook jobs waiting in the dead-letter file")
+                .register(meterRegistry);
+        Gauge.builder("webhook.jobs.retrying", retrying, AtomicInteger::get)
+                .description("Webhook jobs waiting for a retry after an upstream failure")
+                .register(meterRegistry);
+        Map<Long, CheckoutFulfillment> recovered = webhookJournal.open();
+        recovered.forEach((seq, job) -> {
+            // the journal is the source of truth: a crash may have come before the claim was written
+            webhookDedupStore.confirm(job.dedupKey());
+            schedule(seq, job, 1, 0);
+        });
+        if (!recovered.isEmpty()) {
+            log.info("Replaying {} unfinished webhook jobs from journal", recovered.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            // jobs still queued or retrying stay in the journal and are replayed on next start
+            executor.shutdownNow();
+            webhookJournal.close();
+        }
+    }
+
+    /**
+     * Accepts a fulfillment job whose dedup key the caller has claimed. With the queue enabled
+     * this returns as soon as the job is durably journaled; otherwise the purchases are recorded
+     * before returning. The claim is confirmed once either has happened, and released if not.
+     *
+     * @return false if inline fulfillment failed (the webhook should then fail so Stripe retries)
+     * @throws IOException if the job could not be journaled (likewise)
+     */
+    public boolean submit(CheckoutFulfillment job) throws IOException {
+        boolean accepted = false;
+        try {
+            if (queueEnabled) {
+                long seq = webhookJournal.append(job);
+                schedule(seq, job, 1, 0);
+                accepted = true;
+            } else {
+                try {
+                    accepted = fulfill(job);
+                } catch (RuntimeException e) {
+                    log.warn("Webhook fulfillment failed: sessionId={}, error={}", job.sessionId(), e.getMessage());
+                }
+            }
+        } finally {
+            if (accepted) {
+                webhookDedupStore.confirm(job.dedupKey());
+            } else {
+                webhookDedupStore.release(job.dedupKey());
+            }
+        }
+        return accepted;
+    }
+
+    private void schedule(long seq, CheckoutFulfillment job, int attempt, long delayMs) {
+        executor.schedule(() -> runAttempt(seq, job, attempt), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues every dead-lettered job again, e.g. after the version it refers to was restored.
+     * Their dedup claims were never released, so Stripe redeliveries are still dropped.
+     *
+     * @return the number of jobs queued
+     * @throws IllegalStateException if the queue is disabled
+     */
+    public int replayDeadLetters() throws IOException {
+        if (!queueEnabled) {
+            throw new IllegalStateException("Webhook queue is disabled");
+        }
+        Map<Long, CheckoutFulfillment> replayed = webhookJournal.replayDeadLetters();
+        replayed.forEach((seq, job) -> schedule(seq, job, 1, 0));
+        log.info("Replaying {} dead-lettered webhook jobs", replayed.size());
+        return replayed.size();
+    }
+
+    private void runAttempt(long seq, CheckoutFulfillment job, int attempt) {
+        boolean done;
+        try {
+            done = fulfill(job);
+        } catch (RuntimeException e) {
+            if (!UpstreamGuard.isUpstreamFailure(e)) {
+                deadLetter(seq, job, attempt, e);
+                return;
+            }
+            log.warn("Webhook job failed: sessionId={}, attempt={}, error={}", job.sessionId(), attempt, e.getMessage());
+            done = false;
+        }
+        if (done) {
+            webhookJournal.complete(seq);
+            if (attempt > 1) {
+                retrying.decrementAndGet();
+            }
+            return;
+        }
+        retry(seq, job, attempt);
+    }
+
+    private void retry(long seq, CheckoutFulfillment job, int attempt) {
+        if (attempt == 1) {
+            retrying.incrementAndGet();
+        }
+        long backoffMs = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        if (attempt >= alertAfterAttempts) {
+            log.error("Webhook job still failing after {} attempts, retrying in {} ms: userId={}, versionIds={}, sessionId={}",
+                    attempt, backoffMs, job.userId(), job.versionIds(), job.sessionId());
+        } else {
+            log.info("Retrying webhook job in {} ms: sessionId={}, attempt={}", backoffMs, job.sessionId(), attempt + 1);
+        }
+        schedule(seq, job, attempt + 1, backoffMs);
+    }
+
+    private void deadLetter(long seq, CheckoutFulfillment job, int attempt, RuntimeException error) {
+        try {
+            webhookJournal.deadLetter(seq, error.getMessage());
+        } catch (IOException e) {
+            log.error("Failed to dead-letter webhook job, keeping it queued: sessionId={}", job.sessionId(), e);
+            retry(seq, job, attempt);
+            return;
+        }
+        if (attempt > 1) {
+            retrying.decrementAndGet();
+        }
+        deadLettered.increment();
+        log.error("Webhook job cannot be fulfilled, moved to dead letters: userId={}, versionIds={}, sessionId={}",
+                job.userId(), job.versionIds(), job.sessionId(), error);
+    }
+
+    /**
+     * Records the job's purchases. Idempotent: skips versions already recorded to handle
+     * Stripe retries and journal replays safely.
+     *
+     * @return true if all purchases are recorded (now or previously)
+     */
+    public boolean fulfill(CheckoutFulfillment job) {
+        UUID userId = job.userId();
+        List<Long> versionIds = job.versionIds();
+
+        // Filter out already-recorded versions (idempotency for Stripe retries); the version
+        // lookup does not depend on it, so both run concurrently
+        Map.Entry<Set<Long>, Map<Long, AvatarVersion>> lookup = upstreamFanOut.both(
+                () -> purchaseService.getPurchasedVersionIds(userId, versionIds),
+                () -> avatarService.getVersionsByIds(versionIds),
+                Map::entry);
+        Set<Long> alreadyRecorded = lookup.getKey();
+        List<Long> newVersionIds = versionIds.stream()
+                .filter(vId -> !alreadyRecorded.contains(vId))
+                .toList();
+
+        if (newVersionIds.isEmpty()) {
+            log.info("All purchases already recorded (idempotent skip): userId={}, sessionId={}", userId, job.sessionId());
+            return true;
+        }
+
+        Map<Long, AvatarVersion> versions = lookup.getValue();
+        List<Long> avatarIds = newVersionIds.stream()
+                .map(vId -> {
+                    AvatarVersion version = versions.get(vId);
+                    if (version == null) throw new RuntimeException("Avatar version not found: " + vId);
+                    return version.getAvatarId();
+                })
+                .toList();
+
+        boolean recorded = purchaseService.recordPurchases(userId, avatarIds, newVersionIds, job.sessionId());
+        if (recorded) {
+            log.info("Purchases recorded via webhook: userId={}, versionIds={}, sessionId={}", userId, newVersionIds, job.sessionId());
+        } else {
+            log.error("Failed to record purchases via webhook: userId={}, versionIds={}, sessionId={}", userId, newVersionIds, job.sessionId());
+        }
+        return recorded;
+    }
+}
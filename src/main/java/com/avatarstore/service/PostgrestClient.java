@@ -0,0 +1,116 @@
+package com.avatarstore.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads PostgREST JSON arrays straight from the response stream with Jackson's streaming
+ * parser, so no response is ever materialised as a String. An empty body is treated as
+ * an empty array. Non-2xx responses throw as with {@link RestTemplate#exchange}.
+ */
+@Component
+@RequiredArgsConstructor
+public class PostgrestClient {
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    /** Readers are immutable and cache their deserializers, so one per row type is reused. */
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * GETs a JSON array and binds each element to the given type.
+     *
+     * @return the rows in response order (unmodifiable)
+     */
+    public <T> List<T> getList(String url, HttpHeaders headers, Class<T> type) {
+        ObjectReader reader = readers.computeIfAbsent(type, objectMapper::readerFor);
+        List<T> rows = get(url, headers, response -> {
+            try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                if (!startArray(parser)) {
+                    return List.of();
+                }
+                List<T> result = new ArrayList<>();
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        throw new IOException("Unexpected end of JSON array");
+                    }
+                    result.add(reader.readValue(parser));
+                }
+                return Collections.unmodifiableList(result);
+            }
+        });
+        return rows != null ? rows : List.of();
+    }
+
+    /**
+     * GETs a JSON array of objects and collects one numeric field from each row, without
+     * binding the rows. Rows where the field is missing or not a number are skipped.
+     */
+    public long[] getLongColumn(String url, HttpHeaders headers, String field) {
+        long[] values = get(url, headers, response -> {
+            try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                if (!startArray(parser)) {
+                    return new long[0];
+                }
+                long[] result = new long[16];
+                int size = 0;
+                JsonToken token;
+                while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        boolean wanted = field.equals(parser.currentName());
+                        JsonToken value = parser.nextToken();
+                        if (wanted && value == JsonToken.VALUE_NUMBER_INT) {
+                            if (size == result.length) {
+                                result = Arrays.copyOf(result, size * 2);
+                            }
+                            result[size++] = parser.getLongValue();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                if (token != JsonToken.END_ARRAY) {
+                    throw new IOException("Expected an array of objects but found " + token);
+                }
+                return Arrays.copyOf(result, size);
+            }
+        });
+        return values != null ? values : new long[0];
+    }
+
+    private <T> T get(String url, HttpHeaders headers, ResponseExtractor<T> extractor) {
+        return restTemplate.execute(url, HttpMethod.GET, request -> request.getHeaders().putAll(headers), extractor);
+    }
+
+    /**
+     * @return false for an empty body; true if positioned on the opening '[' of an array
+     */
+    private static boolean startArray(JsonParser parser) throws IOException {
+        JsonToken first = parser.nextToken();
+        if (first == null) {
+            return false;
+        }
+        if (first != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a JSON array but found " + first);
+        }
+        return true;
+    }
+}
@@ -1,8 +1,11 @@
 package com.avatarstore.service;
 
 import com.avatarstore.dto.PurchasedItem;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,9 +16,16 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,7 +33,10 @@ import java.util.UUID;
 public class PurchaseService {
 
     private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    private final PostgrestClient postgrestClient;
+    private final MeterRegistry meterRegistry;
+    private final UpstreamFanOut upstreamFanOut;
+    private final UpstreamGuard upstreamGuard;
 
     @Value("${supabase.url:}")
     private String supabaseUrl;
@@ -31,32 +44,131 @@ public class PurchaseService {
     @Value("${supabase.service-role-key:}")
     private String serviceRoleKey;
 
+    @Value("${purchases.ownership-cache.enabled:true}")
+    private boolean ownershipCacheEnabled;
+
+    @Value("${purchases.ownership-cache.max-weight:1000000}")
+    private long ownershipCacheMaxWeight;
+
+    @Value("${purchases.ownership-cache.expire-after-access:10m}")
+    private Duration ownershipCacheExpireAfterAccess;
+
+    @Value("${purchases.ownership-cache.refresh-after-write:2m}")
+    private Duration ownershipCacheRefreshAfterWrite;
+
+    /** userId -> every version id the user owns; loaded with one query on first access. */
+    private LoadingCache<UUID, OwnedVersions> ownershipCache;
+
+    /**
+     * Builds the per-user ownership cache. Memory is bounded by the total number of cached
+     * version ids (max-weight); idle users are evicted after expire-after-access. Entries older
+     * than refresh-after-write are reloaded in the background on their next read, so purchases
+     * recorded by other nodes become visible without active users ever waiting on a reload (if
+     * the reload fails, the old entry is kept).
+     */
+    @PostConstruct
+    public void initOwnershipCache() {
+        if (!ownershipCacheEnabled) {
+            return;
+        }
+        ownershipCache = Caffeine.newBuilder()
+                .maximumWeight(ownershipCacheMaxWeight)
+                .weigher((UUID userId, OwnedVersions owned) -> 1 + owned.size())
+                .expireAfterAccess(ownershipCacheExpireAfterAccess)
+                .refreshAfterWrite(ownershipCacheRefreshAfterWrite)
+                .recordStats()
+                .build(this::fetchOwnedVersions);
+        CaffeineCacheMetrics.monitor(meterRegistry, ownershipCache, "purchases.ownership");
+    }
+
     /**
      * Returns true if the user has a purchase record for the given avatar.
      * Uses service role so RLS does not block the check.
      */
     public boolean hasPurchased(UUID userId, Long versionId) {
         if (userId == null || versionId == null) return false;
+        if (ownershipCacheEnabled) {
+            try {
+                return ownershipCache.get(userId).contains(versionId);
+            } catch (Exception e) {
+                log.warn("Failed to check purchase: user={}, versionId={}", userId, versionId, e);
+                return false;
+            }
+        }
         String base = baseUrl();
         String url = base + "/rest/v1/purchases?user_id=eq." + userId + "&avatar_version_id=eq." + versionId + "&select=id&limit=1";
-        HttpEntity<String> entity = new HttpEntity<>(createHeaders());
         try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) return false;
-            List<Map<String, Object>> rows = objectMapper.readValue(response.getBody(), new TypeReference<>() {});
-            return rows != null && !rows.isEmpty();
+            return upstreamGuard.call(UpstreamGuard.Compartment.PURCHASES, "purchases.exists",
+                    () -> postgrestClient.getLongColumn(url, createHeaders(), "id")).length > 0;
         } catch (Exception e) {
             log.warn("Failed to check purchase: user={}, versionId={}", userId, versionId, e);
             return false;
         }
     }
 
+    /**
+     * Returns which of the given versions the user has purchased, using a single Supabase call.
+     * Unlike {@link #hasPurchased}, errors are not turned into "owns nothing": checkout and
+     * fulfillment rely on this for duplicate checks, so they must see an outage.
+     *
+     * @throws RuntimeException if the purchases could not be read (see {@link UpstreamGuard#isUpstreamFailure})
+     */
+    public Set<Long> getPurchasedVersionIds(UUID userId, Collection<Long> versionIds) {
+        if (userId == null || versionIds == null || versionIds.isEmpty()) return Set.of();
+        if (ownershipCacheEnabled) {
+            OwnedVersions owned = ownershipCache.get(userId);
+            return versionIds.stream().filter(Objects::nonNull).filter(owned::contains).collect(Collectors.toSet());
+        }
+        List<Long> distinct = versionIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) return Set.of();
+        // large lists are split into concurrent in.(...) requests
+        List<long[]> batches = upstreamFanOut.all(upstreamFanOut.batches(distinct).stream()
+                .map(batch -> (Supplier<long[]>) () -> fetchOwnedAmong(userId, batch))
+                .toList());
+        Set<Long> owned = new HashSet<>();
+        for (long[] batch : batches) {
+            for (long versionId : batch) {
+                owned.add(versionId);
+            }
+        }
+        return owned;
+    }
+
     /**
      * Bulk-inserts purchase records for multiple versions in a single Supabase call.
+     *
+     * @return false if there was nothing to insert or the response was not 2xx
+     * @throws RuntimeException if the call failed, so callers can tell upstream failures
+     * ({@link UpstreamGuard#isUpstreamFailure}) from rejected inserts
      */
     public boolean recordPurchases(UUID userId, List<Long> avatarIds, List<Long> versionIds, String stripeSessionId) {
         if (userId == null || versionIds == null || versionIds.isEmpty()) return false;
 
+        HttpHeaders headers = createHeaders();
+        headers.set("Prefer", "return=minimal");
+        HttpEntity<String> entity = new HttpEntity<>(purchasesPayload(userId, avatarIds, versionIds, stripeSessionId), headers);
+        try {
+            ResponseEntity<String> response = upstreamGuard.call(UpstreamGuard.Compartment.PURCHASES, "purchases.insert",
+                    () -> restTemplate.exchange(baseUrl() + "/rest/v1/purchases", HttpMethod.POST, entity, String.class));
+            if (response.getStatusCode().is2xxSuccessful()) {
+                if (ownershipCacheEnabled) {
+                    ownershipCache.asMap().computeIfPresent(userId, (id, owned) -> owned.with(versionIds));
+                }
+                log.info("Recorded {} purchases: user={}, versionIds={}", versionIds.size(), userId, versionIds);
+                return true;
+            }
+            log.warn("Failed to record purchases: status={}", response.getStatusCode());
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Failed to record purchases: user={}, versionIds={}, error={}", userId, versionIds, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * JSON array of purchase rows for a bulk PostgREST insert (avatarIds and versionIds are parallel lists).
+     */
+    static String purchasesPayload(UUID userId, List<Long> avatarIds, List<Long> versionIds, String stripeSessionId) {
         StringBuilder sb = new StringBuilder("[");
         for (int i = 0; i < versionIds.size(); i++) {
             if (i > 0) sb.append(",");
@@ -71,22 +183,7 @@ public class PurchaseService {
             }
         }
         sb.append("]");
-
-        HttpHeaders headers = createHeaders();
-        headers.set("Prefer", "return=minimal");
-        HttpEntity<String> entity = new HttpEntity<>(sb.toString(), headers);
-        try {
-            ResponseEntity<String> response = restTemplate.exchange(baseUrl() + "/rest/v1/purchases", HttpMethod.POST, entity, String.class);
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Recorded {} purchases: user={}, versionIds={}", versionIds.size(), userId, versionIds);
-                return true;
-            }
-            log.warn("Failed to record purchases: status={}", response.getStatusCode());
-            return false;
-        } catch (Exception e) {
-            log.warn("Failed to record purchases: user={}, versionIds={}", userId, versionIds, e);
-            return false;
-        }
+        return sb.toString();
     }
 
     /**
@@ -101,17 +198,66 @@ public class PurchaseService {
                 + ",avatar_versions(id,name,price,description,blob_container_name,blob_file_path,blob_file_name)"
                 + "&user_id=eq." + userId
                 + "&order=created_at.desc";
-        HttpEntity<String> entity = new HttpEntity<>(createHeaders());
         try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, entity, String.class);
-            if (response.getBody() == null || response.getBody().trim().isEmpty()) return List.of();
-            return objectMapper.readValue(response.getBody(), new TypeReference<List<PurchasedItem>>() {});
+            return upstreamGuard.call(UpstreamGuard.Compartment.PURCHASES, "purchases.list",
+                    () -> postgrestClient.getList(url, createHeaders(), PurchasedItem.class));
         } catch (Exception e) {
             log.warn("Failed to fetch purchases for user={}", userId, e);
             return List.of();
         }
     }
 
+    private long[] fetchOwnedAmong(UUID userId, Collection<Long> versionIds) {
+        String ids = versionIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String url = baseUrl() + "/rest/v1/purchases?user_id=eq." + userId
+                + "&avatar_version_id=in.(" + ids + ")&select=avatar_version_id";
+        return upstreamGuard.call(UpstreamGuard.Compartment.PURCHASES, "purchases.owned-among",
+                () -> postgrestClient.getLongColumn(url, createHeaders(), "avatar_version_id"));
+    }
+
+    /**
+     * Loads every version id the user owns. Throws on failure so nothing is cached.
+     */
+    private OwnedVersions fetchOwnedVersions(UUID userId) {
+        String url = baseUrl() + "/rest/v1/purchases?user_id=eq." + userId + "&select=avatar_version_id";
+        return OwnedVersions.of(upstreamGuard.call(UpstreamGuard.Compartment.PURCHASES, "purchases.owned",
+                () -> postgrestClient.getLongColumn(url, createHeaders(), "avatar_version_id")));
+    }
+
+    /**
+     * Immutable set of owned version ids stored as a sorted primitive array
+     * (8 bytes per id, binary-search lookups).
+     */
+    private static final class OwnedVersions {
+        private final long[] sortedIds;
+
+        private OwnedVersions(long[] sortedIds) {
+            this.sortedIds = sortedIds;
+        }
+
+        static OwnedVersions of(long[] versionIds) {
+            return new OwnedVersions(Arrays.stream(versionIds).sorted().distinct().toArray());
+        }
+
+        boolean contains(long versionId) {
+            return Arrays.binarySearch(sortedIds, versionId) >= 0;
+        }
+
+        int size() {
+            return sortedIds.length;
+        }
+
+        OwnedVersions with(Collection<Long> versionIds) {
+            long[] merged = Arrays.copyOf(sortedIds, sortedIds.length + versionIds.size());
+            int n = sortedIds.length;
+            for (Long id : versionIds) {
+                if (id != null) merged[n++] = id;
+            }
+            long[] distinct = Arrays.stream(merged, 0, n).sorted().distinct().toArray();
+            return new OwnedVersions(distinct);
+        }
+    }
+
     private String baseUrl() {
         String base = supabaseUrl != null ? supabaseUrl.trim() : "";
         return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
@@ -0,0 +1,373 @@
+package com.avatarstore.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Local disk cache for Supabase Storage objects. Avatar bundles are immutable per
+ * version path, so once a file has been downloaded in full it can be served from
+ * local disk. Entries are keyed by bucket + path, capped by total size and evicted
+ * least-recently-used first.
+ * <p>
+ * The upstream ETag is stored for If-Range but never revalidated, so cached objects must be
+ * immutable: an object replaced directly in Supabase keeps being served from the cache until
+ * it is evicted or {@link #invalidate invalidated} (uploads through this service do that).
+ * <p>
+ * Readers get a channel opened under the index lock, so it always matches the length and
+ * ETag they are given. Cache files are never written in place: eviction and replacement only
+ * unlink or rename over the name, and an open channel keeps reading the bytes it was opened on.
+ */
+@Service
+@Slf4j
+public class StorageCacheService {
+
+    private static final String DATA_SUFFIX = ".bin";
+    private static final String ETAG_SUFFIX = ".etag";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${storage.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.cache.dir:${java.io.tmpdir}/avatar-store-cache}")
+    private Path cacheDir;
+
+    @Value("${storage.cache.max-size:10GB}")
+    private DataSize maxSize;
+
+    /** Access-ordered, so iteration starts at the least recently used entry. Guarded by itself. */
+    private final LinkedHashMap<String, CachedFile> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> filling = new HashSet<>();
+    /** Fills in progress whose entry was invalidated since they started; they are not committed. */
+    private final Set<String> staleFills = new HashSet<>();
+    private long totalBytes;
+
+    /**
+     * A fully downloaded object on local disk.
+     *
+     * @param file   path of the cached bytes
+     * @param length size in bytes
+     * @param etag   upstream ETag (quoted), or null if the upstream did not send one
+     */
+    private record CachedFile(Path file, long length, String etag) {}
+
+    /**
+     * A cached object opened for reading. The caller must close the channel.
+     *
+     * @param channel the cached bytes, unaffected by later eviction or replacement of the entry
+     * @param length  size in bytes
+     * @param etag    upstream ETag (quoted), or null if the upstream did not send one
+     */
+    public record OpenFile(FileChannel channel, long length, String etag) {}
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDir);
+            loadIndex();
+            log.info("Storage cache enabled: dir={}, entries={}, size={} bytes, max={} bytes",
+                    cacheDir, index.size(), totalBytes, maxSize.toBytes());
+        } catch (IOException e) {
+            log.error("Could not initialise storage cache at {}; caching disabled", cacheDir, e);
+            enabled = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens the cached file for bucket+path and marks it as recently used.
+     *
+     * @return the open file, or null if it is not cached (an entry whose file disappeared, e.g.
+     * removed by hand, is dropped)
+     */
+    public OpenFile open(String bucket, String path) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(bucket, path);
+        CachedFile cached;
+        FileChannel channel;
+        synchronized (index) {
+            cached = index.get(key);
+            if (cached == null) {
+                return null;
+            }
+            try {
+                channel = FileChannel.open(cached.file(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                log.debug("Cached file unavailable: key={}, error={}", key, e.getMessage());
+                remove(key);
+                return null;
+            }
+        }
+        touch(cached.file());
+        return new OpenFile(channel, cached.length(), cached.etag());
+    }
+
+    /**
+     * Drops the entry for bucket+path, e.g. after the object was overwritten. Downloads already
+     * reading it finish with the old bytes.
+     */
+    public void invalidate(String bucket, String path) {
+        String key = key(bucket, path);
+        synchronized (index) {
+            remove(key);
+            if (filling.contains(key)) {
+                staleFills.add(key);
+            }
+        }
+    }
+
+    /** Caller must hold the index lock. */
+    private void remove(String key) {
+        CachedFile removed = index.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.length();
+            deleteQuietly(removed.file());
+            deleteQuietly(cacheDir.resolve(key + ETAG_SUFFIX));
+        }
+    }
+
+    /**
+     * Starts populating the cache for bucket+path from a full upstream download. Returns null
+     * if caching is disabled, the object is too large, or another download is already filling
+     * the same entry.
+     *
+     * @param expectedLength upstream Content-Length; the entry is only committed if this many bytes arrive
+     */
+    public StorageObject.Mirror beginFill(String bucket, String path, String etag, long expectedLength) {
+        if (!enabled || expectedLength <= 0 || expectedLength > maxSize.toBytes()) {
+            return null;
+        }
+        String key = key(bucket, path);
+        synchronized (index) {
+            if (index.containsKey(key) || !filling.add(key)) {
+                return null;
+            }
+        }
+        try {
+            Path temp = Files.createTempFile(cacheDir, key, TEMP_SUFFIX);
+            return new CacheFill(key, temp, etag, expectedLength);
+        } catch (IOException e) {
+            log.warn("Could not create storage cache temp file for key={}", key, e);
+            synchronized (index) {
+                filling.remove(key);
+            }
+            return null;
+        }
+    }
+
+    private void commit(String key, Path temp, String etag, long length) throws IOException {
+        Path target = cacheDir.resolve(key + DATA_SUFFIX);
+        Path etagFile = cacheDir.resolve(key + ETAG_SUFFIX);
+        // under the lock, so open() never pairs the new file with the previous entry's metadata
+        synchronized (index) {
+            if (staleFills.contains(key)) {
+                log.debug("Storage cache entry invalidated while filling, not cached: key={}", key);
+                deleteQuietly(temp);
+                return;
+            }
+            if (etag != null) {
+                Files.writeString(etagFile, etag, StandardCharsets.UTF_8);
+            } else {
+                Files.deleteIfExists(etagFile);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            CachedFile previous = index.put(key, new CachedFile(target, length, etag));
+            if (previous != null) {
+                totalBytes -= previous.length();
+            }
+            totalBytes += length;
+            evictIfNeeded();
+        }
+        log.debug("Cached storage object: key={}, size={} bytes", key, length);
+    }
+
+    /** Caller must hold the index lock. */
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, CachedFile>> it = index.entrySet().iterator();
+        while (totalBytes > maxSize.toBytes() && it.hasNext()) {
+            Map.Entry<String, CachedFile> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue().length();
+            deleteQuietly(eldest.getValue().file());
+            deleteQuietly(cacheDir.resolve(eldest.getKey() + ETAG_SUFFIX));
+            log.debug("Evicted storage cache entry: key={}", eldest.getKey());
+        }
+    }
+
+    /**
+     * Rebuilds the index from disk, ordering entries by last access (file mtime) so LRU
+     * order survives restarts. Leftover temp files from interrupted fills are removed.
+     */
+    private void loadIndex() throws IOException {
+        List<Path> dataFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(file);
+                } else if (name.endsWith(DATA_SUFFIX)) {
+                    dataFiles.add(file);
+                }
+            }
+        }
+        dataFiles.sort(Comparator.comparing(StorageCacheService::lastModified));
+        synchronized (index) {
+            for (Path file : dataFiles) {
+                String name = file.getFileName().toString();
+                String key = name.substring(0, name.length() - DATA_SUFFIX.length());
+                Path etagFile = cacheDir.resolve(key + ETAG_SUFFIX);
+                String etag = Files.exists(etagFile) ? Files.readString(etagFile, StandardCharsets.UTF_8) : null;
+                long length = Files.size(file);
+                index.put(key, new CachedFile(file, length, etag));
+                totalBytes += length;
+            }
+            evictIfNeeded();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException ignored) {
+            // evicted concurrently; the caller falls back to upstream
+        } catch (IOException e) {
+            log.debug("Could not update access time of {}", file, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete storage cache file {}", file, e);
+        }
+    }
+
+    private static String key(String bucket, String path) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(((bucket != null ? bucket : "") + "/" + path).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Writes a copy of an upstream download to a temp file and moves it into the cache
+     * once the expected number of bytes has arrived. Disk errors only disable the fill.
+     */
+    private class CacheFill implements StorageObject.Mirror {
+        private final String key;
+        private final Path temp;
+        private final String etag;
+        private final long expectedLength;
+        private OutputStream out;
+        private boolean done;
+
+        CacheFill(String key, Path temp, String etag, long expectedLength) throws IOException {
+            this.key = key;
+            this.temp = temp;
+            this.etag = etag;
+            this.expectedLength = expectedLength;
+            this.out = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            if (done) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                log.warn("Storage cache write failed for key={}; entry will not be cached", key, e);
+                abort();
+            }
+        }
+
+        @Override
+        public void complete(long totalBytes) {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+                if (totalBytes == expectedLength) {
+                    commit(key, temp, etag, totalBytes);
+                } else {
+                    log.warn("Storage cache fill size mismatch for key={}: expected={}, got={}", key, expectedLength, totalBytes);
+                    deleteQuietly(temp);
+                }
+            } catch (IOException e) {
+                log.warn("Could not commit storage cache entry key={}", key, e);
+                deleteQuietly(temp);
+            } finally {
+                synchronized (index) {
+                    filling.remove(key);
+                    staleFills.remove(key);
+                }
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // the temp file is deleted below
+            }
+            deleteQuietly(temp);
+            synchronized (index) {
+                filling.remove(key);
+                staleFills.remove(key);
+            }
+        }
+    }
+}
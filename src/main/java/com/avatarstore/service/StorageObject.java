@@ -0,0 +1,343 @@
+package com.avatarstore.service;
+
+import org.apache.hc.core5.http.io.EofSensorInputStream;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * An open Supabase Storage object whose body has not been read yet. The body comes
+ * from an upstream connection (blocking, or a non-blocking DataBuffer stream) or from a
+ * region of a locally cached file. The caller owns the underlying connection/file and
+ * must close it.
+ */
+public class StorageObject implements Closeable {
+
+    /**
+     * Receives a copy of every chunk streamed from upstream (e.g. to populate a local cache).
+     * Failures inside a mirror must not affect the client download.
+     */
+    public interface Mirror {
+        void write(byte[] buffer, int offset, int length);
+
+        void complete(long totalBytes);
+
+        void abort();
+    }
+
+    private final HttpStatusCode statusCode;
+    private final HttpHeaders headers;
+    private final ClientHttpResponse response;
+    private final Mirror mirror;
+    private final int bufferSize;
+    private final FileChannel file;
+    private final long position;
+    private final long count;
+    private final Flux<DataBuffer> publisher;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private boolean fullyRead;
+    private LongConsumer bytesRead;
+
+    private StorageObject(HttpStatusCode statusCode, HttpHeaders headers, ClientHttpResponse response, Mirror mirror,
+                          int bufferSize, FileChannel file, long position, long count,
+                          Flux<DataBuffer> publisher) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.response = response;
+        this.mirror = mirror;
+        this.bufferSize = bufferSize;
+        this.file = file;
+        this.position = position;
+        this.count = count;
+        this.publisher = publisher;
+    }
+
+    public StorageObject(ClientHttpResponse response, int bufferSize) throws IOException {
+        this(response, bufferSize, null);
+    }
+
+    /**
+     * Wraps an upstream response; if a mirror is given, the streamed bytes are also copied to it.
+     */
+    public StorageObject(ClientHttpResponse response, int bufferSize, Mirror mirror) throws IOException {
+        this(response.getStatusCode(), response.getHeaders(), response, mirror, bufferSize, null, 0, 0, null);
+    }
+
+    /**
+     * Wraps a region of a local file, already opened as the given channel. The headers must
+     * describe the region (Content-Length, Content-Range for partial content).
+     */
+    public static StorageObject ofFile(HttpStatusCode statusCode, HttpHeaders headers, FileChannel file,
+                                       long position, long count) {
+        return new StorageObject(statusCode, headers, null, null, 0, file, position, count, null);
+    }
+
+    /**
+     * Wraps an upstream response received by the non-blocking client. The body must be read
+     * with {@link #getBodyChunks()}; if a mirror is given, the chunks are also copied to it.
+     */
+    public static StorageObject ofPublisher(HttpStatusCode statusCode, HttpHeaders headers, Flux<DataBuffer> body,
+                                            Mirror mirror) {
+        return new StorageObject(statusCode, headers, null, mirror, 0, null, 0, 0, body);
+    }
+
+    /**
+     * Reports the size of every chunk read from upstream as it is streamed (e.g. to a byte
+     * counter). Not called for bodies served from a local file.
+     */
+    public StorageObject onBytesRead(LongConsumer bytesRead) {
+        this.bytesRead = bytesRead;
+        return this;
+    }
+
+    /**
+     * @return 200 for a full body, 206 for a partial body, 416 if the requested range was not satisfiable
+     */
+    public HttpStatusCode getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the Content-Range header (e.g. "bytes 0-99/1000"), or null for a full body
+     */
+    public String getContentRange() {
+        return headers.getFirst(HttpHeaders.CONTENT_RANGE);
+    }
+
+    /**
+     * @return the ETag (quoted), or null if unknown
+     */
+    public String getETag() {
+        return headers.getETag();
+    }
+
+    /**
+     * @return the Last-Modified time in epoch millis, or -1 if unknown
+     */
+    public long getLastModified() {
+        return headers.getLastModified();
+    }
+
+    /**
+     * @return the Content-Length, or -1 if the upstream did not send one
+     */
+    public long getContentLength() {
+        return headers.getContentLength();
+    }
+
+    public MediaType getContentType() {
+        MediaType contentType = headers.getContentType();
+        return contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    /**
+     * @return true if the body can only be read with {@link #getBodyChunks()}
+     */
+    public boolean isNonBlocking() {
+        return publisher != null;
+    }
+
+    /**
+     * The body as a stream of byte chunks, each copied out of (and releasing) one upstream
+     * DataBuffer. Chunks are only fetched from the connection as they are requested, so a
+     * slow client holds back the upstream instead of filling memory. Writes to the mirror
+     * happen off the I/O event loop. Can be subscribed to once.
+     *
+     * @throws IllegalStateException if this object was not opened by the non-blocking client
+     */
+    public Flux<byte[]> getBodyChunks() {
+        if (publisher == null) {
+            throw new IllegalStateException("Body is not a DataBuffer stream");
+        }
+        Flux<byte[]> chunks = publisher
+                .doOnSubscribe(subscription -> subscribed.set(true))
+                .map(buffer -> {
+                    try {
+                        byte[] chunk = new byte[buffer.readableByteCount()];
+                        buffer.read(chunk);
+                        if (bytesRead != null) {
+                            bytesRead.accept(chunk.length);
+                        }
+                        return chunk;
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+        if (mirror == null) {
+            return chunks;
+        }
+        AtomicLong total = new AtomicLong();
+        return chunks
+                .publishOn(Schedulers.boundedElastic(), 1)
+                .doOnNext(chunk -> {
+                    mirror.write(chunk, 0, chunk.length);
+                    total.addAndGet(chunk.length);
+                })
+                .doOnComplete(() -> mirror.complete(total.get()))
+                .doOnCancel(mirror::abort)
+                .doOnError(error -> mirror.abort());
+    }
+
+    /**
+     * The body as a stream; for a file region, only the region's bytes.
+     */
+    public InputStream getBody() throws IOException {
+        if (file != null) {
+            return new RegionInputStream(file, position, count);
+        }
+        return response.getBody();
+    }
+
+    /**
+     * Copies the body to the given stream. Upstream bodies are copied in fixed-size chunks,
+     * so memory use does not depend on the object size. File regions go through
+     * {@link FileChannel#transferTo}; into a servlet stream the JDK still copies via a small heap
+     * buffer. The container's sendfile would avoid that copy, but it reopens the file by name
+     * after the headers are sent and reports no completion, so the cache could neither keep the
+     * file in place for it nor tell when it may be evicted.
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        if (file != null) {
+            return transferFile(out);
+        }
+        InputStream in = response.getBody();
+        byte[] buffer = new byte[bufferSize];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (mirror != null) {
+                mirror.write(buffer, 0, read);
+            }
+            if (bytesRead != null) {
+                bytesRead.accept(read);
+            }
+            total += read;
+        }
+        fullyRead = true;
+        out.flush();
+        if (mirror != null) {
+            mirror.complete(total);
+        }
+        return total;
+    }
+
+    private long transferFile(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long offset = position;
+        long remaining = count;
+        while (remaining > 0) {
+            long sent = file.transferTo(offset, remaining, target);
+            if (sent <= 0) {
+                break;
+            }
+            offset += sent;
+            remaining -= sent;
+        }
+        out.flush();
+        return count - remaining;
+    }
+
+    /**
+     * Reads [position, position + count) of a file with positional reads, leaving the
+     * channel's own position alone.
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel file;
+        private long next;
+        private final long end;
+
+        RegionInputStream(FileChannel file, long position, long count) {
+            this.file = file;
+            this.next = position;
+            this.end = position + count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            long remaining = end - next;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = file.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, remaining)), next);
+            if (n < 0) {
+                return -1;
+            }
+            next += n;
+            return n;
+        }
+    }
+
+    /**
+     * Closing a pooled response normally drains the rest of the body so the connection can be
+     * reused; for a half-read multi-hundred-MB object that is far more expensive than dropping
+     * the connection, so abort it instead.
+     */
+    private void abortUpstream() {
+        try {
+            if (response.getBody() instanceof EofSensorInputStream body) {
+                body.abort();
+            }
+        } catch (IOException ignored) {
+            // the connection is discarded either way
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mirror != null) {
+            mirror.abort();
+        }
+        if (response != null) {
+            if (!fullyRead) {
+                abortUpstream();
+            }
+            response.close();
+        }
+        if (publisher != null && !subscribed.get()) {
+            // nobody will read the body; cancelling releases the upstream connection
+            publisher.subscribe(new BaseSubscriber<>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    cancel();
+                }
+            });
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // nothing useful to do; the file handle is released either way
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.stripe.model.Event;
 import com.stripe.model.checkout.Session;
 import com.stripe.net.Webhook;
 import com.stripe.param.checkout.SessionCreateParams;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -16,9 +17,12 @@ import java.util.UUID;
 import java.util.List;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class StripeService {
 
+    private final UpstreamGuard upstreamGuard;
+
     @Value("${stripe.webhook-secret:}")
     private String webhookSecret;
 
@@ -33,8 +37,23 @@ public class StripeService {
      * Prices are read server-side from AvatarVersion — never trusted from the client.
      */
     public Session createCheckoutSession(List<AvatarVersionPair> items, UUID userId) throws StripeException {
-        long totalInCents = 0;
+        SessionCreateParams params = buildCheckoutParams(items, userId);
+        long totalInCents = params.getLineItems().stream()
+                .mapToLong(lineItem -> lineItem.getPriceData().getUnitAmount())
+                .sum();
+
+        Session session = upstreamGuard.call(UpstreamGuard.Compartment.STRIPE, "checkout.sessions.create",
+                () -> Session.create(params));
+        log.info("Created Stripe Checkout Session: sessionId={}, userId={}, versionIds={}, total={}",
+                session.getId(), userId, params.getMetadata().get("versionIds"), totalInCents);
+        return session;
+    }
 
+    /**
+     * Builds the Checkout Session parameters: one line item per version, priced in cents,
+     * with the user and version ids in the session metadata for the webhook.
+     */
+    SessionCreateParams buildCheckoutParams(List<AvatarVersionPair> items, UUID userId) {
         String versionIdsStr = items.stream()
                 .map(i -> i.version().getId().toString())
                 .reduce((a, b) -> a + "," + b)
@@ -51,7 +70,6 @@ public class StripeService {
             long priceInCents = item.version().getPrice()
                     .multiply(BigDecimal.valueOf(100))
                     .longValueExact();
-            totalInCents += priceInCents;
 
             paramsBuilder.addLineItem(
                     SessionCreateParams.LineItem.builder()
@@ -71,11 +89,7 @@ public class StripeService {
                             .build()
             );
         }
-
-        Session session = Session.create(paramsBuilder.build());
-        log.info("Created Stripe Checkout Session: sessionId={}, userId={}, versionIds={}, total={}",
-                session.getId(), userId, versionIdsStr, totalInCents);
-        return session;
+        return paramsBuilder.build();
     }
 
     /**
@@ -1,17 +1,33 @@
 package com.avatarstore.service;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.util.UUID;
 
 @Service
@@ -20,6 +36,10 @@ import java.util.UUID;
 public class SupabaseStorageService {
 
     private final RestTemplate restTemplate;
+    private final StorageCacheService storageCacheService;
+    private final ObjectProvider<WebClient> supabaseWebClient;
+    private final UpstreamMetrics upstreamMetrics;
+    private final UpstreamGuard upstreamGuard;
 
     @Value("${supabase.url:}")
     private String supabaseUrl;
@@ -30,6 +50,9 @@ public class SupabaseStorageService {
     @Value("${supabase.storage.bucket:avatars}")
     private String defaultBucket;
 
+    @Value("${supabase.storage.download-buffer-size:65536}")
+    private int downloadBufferSize;
+
     /**
      * Download a file from Supabase Storage (authenticated).
      *
@@ -45,8 +68,13 @@ public class SupabaseStorageService {
         String url = buildDownloadUrl(bucketName, path);
         HttpEntity<String> entity = new HttpEntity<>(createHeaders());
         try {
-            ResponseEntity<byte[]> response = restTemplate.exchange(url, HttpMethod.GET, entity, byte[].class);
-            return response.getBody();
+            ResponseEntity<byte[]> response = upstreamGuard.call(UpstreamGuard.Compartment.STORAGE, "objects.get",
+                    () -> restTemplate.exchange(url, HttpMethod.GET, entity, byte[].class));
+            byte[] body = response.getBody();
+            if (body != null) {
+                upstreamMetrics.storageBytes("download").increment(body.length);
+            }
+            return body;
         } catch (Exception e) {
             log.warn("Failed to download from Supabase Storage: bucket={}, path={}", bucketName, path, e);
             return null;
@@ -60,6 +88,193 @@ public class SupabaseStorageService {
         return downloadFile(null, path);
     }
 
+    /**
+     * Open a file in Supabase Storage for streaming (authenticated). Only the response
+     * headers are read here; the body stays on the upstream connection until the caller
+     * reads it, so large files are never buffered in memory.
+     *
+     * @param bucket bucket name (null to use default)
+     * @param path   object path within the bucket
+     * @return the open object (caller must close it), or null if not found or error
+     */
+    public StorageObject openDownload(String bucket, String path) {
+        return openDownload(bucket, path, null, null);
+    }
+
+    /**
+     * Open a byte range of a file in Supabase Storage for streaming. The Range and If-Range
+     * values are forwarded as-is, so the upstream decides whether to answer with the
+     * requested slice (206), the full object (200, e.g. when If-Range no longer matches)
+     * or 416 if the range cannot be satisfied.
+     *
+     * @param bucket  bucket name (null to use default)
+     * @param path    object path within the bucket
+     * @param range   Range header value (e.g. "bytes=1000-"), or null for the full object
+     * @param ifRange If-Range header value (ETag or HTTP date), or null
+     * @return the open object (caller must close it), or null if not found or error
+     */
+    public StorageObject openDownload(String bucket, String path, String range, String ifRange) {
+        if (path == null || path.isBlank()) {
+            return null;
+        }
+        String bucketName = bucket != null && !bucket.isBlank() ? bucket : defaultBucket;
+        StorageCacheService.OpenFile cached = storageCacheService.open(bucketName, path);
+        if (cached != null) {
+            return openCached(cached, range, ifRange);
+        }
+        URI uri = restTemplate.getUriTemplateHandler().expand(buildDownloadUrl(bucketName, path));
+        WebClient webClient = supabaseWebClient.getIfAvailable();
+        if (webClient != null) {
+            return openNonBlocking(webClient, uri, bucketName, path, range, ifRange);
+        }
+        ClientHttpResponse response = null;
+        UpstreamGuard.Permit permit = null;
+        Timer.Sample sample = null;
+        try {
+            // the bulkhead slot is held until the headers arrive, not while the body streams
+            permit = upstreamGuard.acquire(UpstreamGuard.Compartment.STORAGE);
+            sample = upstreamMetrics.start();
+            ClientHttpRequest request = restTemplate.getRequestFactory().createRequest(uri, HttpMethod.GET);
+            request.getHeaders().addAll(createHeaders());
+            if (range != null && !range.isBlank()) {
+                request.getHeaders().set(HttpHeaders.RANGE, range);
+                if (ifRange != null && !ifRange.isBlank()) {
+                    request.getHeaders().set(HttpHeaders.IF_RANGE, ifRange);
+                }
+            }
+            response = request.execute();
+            // timed up to the response headers; the body is streamed later at the client's pace
+            upstreamMetrics.stop(sample, UpstreamMetrics.STORAGE, "objects.open", response.getStatusCode());
+            sample = null;
+            permit.completed(response.getStatusCode());
+            if (!response.getStatusCode().is2xxSuccessful()
+                    && response.getStatusCode() != HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+                log.warn("Failed to open download from Supabase Storage: bucket={}, path={}, status={}",
+                        bucketName, path, response.getStatusCode());
+                response.close();
+                return null;
+            }
+            StorageObject.Mirror cacheFill = null;
+            if (response.getStatusCode() == HttpStatus.OK) {
+                cacheFill = storageCacheService.beginFill(bucketName, path,
+                        response.getHeaders().getETag(), response.getHeaders().getContentLength());
+            }
+            return new StorageObject(response, downloadBufferSize, cacheFill)
+                    .onBytesRead(upstreamMetrics.storageBytes("download")::increment);
+        } catch (Exception e) {
+            if (e instanceof UpstreamUnavailableException) {
+                log.debug("Storage download rejected: bucket={}, path={}, reason={}", bucketName, path, e.getMessage());
+                return null;
+            }
+            if (sample != null) {
+                upstreamMetrics.stop(sample, UpstreamMetrics.STORAGE, "objects.open", e);
+            }
+            permit.failed(e);
+            if (response != null) {
+                response.close();
+            }
+            log.warn("Failed to open download from Supabase Storage: bucket={}, path={}", bucketName, path, e);
+            return null;
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Opens the object with the non-blocking client. The calling request thread blocks until the
+     * response headers arrive (bounded by the read timeout), as with the blocking client; only
+     * the body is non-blocking. It is returned as an unsubscribed DataBuffer stream, so it is read
+     * from the connection only as fast as the client consumes it and no thread is held in between.
+     */
+    private StorageObject openNonBlocking(WebClient webClient, URI uri, String bucketName, String path,
+                                          String range, String ifRange) {
+        UpstreamGuard.Permit permit = null;
+        Timer.Sample sample = null;
+        try {
+            permit = upstreamGuard.acquire(UpstreamGuard.Compartment.STORAGE);
+            sample = upstreamMetrics.start();
+            ResponseEntity<Flux<DataBuffer>> response = webClient.get()
+                    .uri(uri)
+                    .headers(headers -> {
+                        headers.addAll(createHeaders());
+                        if (range != null && !range.isBlank()) {
+                            headers.set(HttpHeaders.RANGE, range);
+                            if (ifRange != null && !ifRange.isBlank()) {
+                                headers.set(HttpHeaders.IF_RANGE, ifRange);
+                            }
+                        }
+                    })
+                    .retrieve()
+                    // 416 carries Content-Range for the client; everything else non-2xx is an error
+                    .onStatus(status -> status == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, r -> Mono.empty())
+                    .toEntityFlux(DataBuffer.class)
+                    .block();
+            if (response == null) {
+                return null;
+            }
+            upstreamMetrics.stop(sample, UpstreamMetrics.STORAGE, "objects.open", response.getStatusCode());
+            sample = null;
+            permit.completed(response.getStatusCode());
+            StorageObject.Mirror cacheFill = null;
+            if (response.getStatusCode() == HttpStatus.OK) {
+                cacheFill = storageCacheService.beginFill(bucketName, path,
+                        response.getHeaders().getETag(), response.getHeaders().getContentLength());
+            }
+            Flux<DataBuffer> body = response.getBody() != null ? response.getBody() : Flux.empty();
+            return StorageObject.ofPublisher(response.getStatusCode(), response.getHeaders(), body, cacheFill)
+                    .onBytesRead(upstreamMetrics.storageBytes("download")::increment);
+        } catch (Exception e) {
+            if (e instanceof UpstreamUnavailableException) {
+                log.debug("Storage download rejected: bucket={}, path={}, reason={}", bucketName, path, e.getMessage());
+                return null;
+            }
+            if (sample != null) {
+                upstreamMetrics.stop(sample, UpstreamMetrics.STORAGE, "objects.open", e);
+            }
+            permit.failed(e);
+            log.warn("Failed to open download from Supabase Storage: bucket={}, path={}", bucketName, path, e);
+            return null;
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Serves a cached object, evaluating Range/If-Range locally the way the upstream would.
+     */
+    private StorageObject openCached(StorageCacheService.OpenFile cached, String range, String ifRange) {
+        FileChannel channel = cached.channel();
+        long length = cached.length();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        if (cached.etag() != null) {
+            headers.setETag(cached.etag());
+        }
+
+        boolean rangeApplies = range != null && !range.isBlank()
+                && (ifRange == null || ifRange.isBlank() || ifRange.equals(cached.etag()));
+        if (!rangeApplies) {
+            headers.setContentLength(length);
+            return StorageObject.ofFile(HttpStatus.OK, headers, channel, 0, length);
+        }
+        try {
+            HttpRange httpRange = HttpRange.parseRanges(range).get(0);
+            long start = httpRange.getRangeStart(length);
+            long end = httpRange.getRangeEnd(length);
+            headers.setContentLength(end - start + 1);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            return StorageObject.ofFile(HttpStatus.PARTIAL_CONTENT, headers, channel, start, end - start + 1);
+        } catch (IllegalArgumentException e) {
+            headers.setContentLength(0);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return StorageObject.ofFile(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, headers, channel, 0, 0);
+        }
+    }
+
     /**
      * Upload a file to Supabase Storage (authenticated).
      *
@@ -72,24 +287,52 @@ public class SupabaseStorageService {
         if (file == null || file.isEmpty()) {
             return null;
         }
-        String bucketName = bucket != null && !bucket.isBlank() ? bucket : defaultBucket;
         if (path == null || path.isBlank()) {
-            String name = file.getOriginalFilename();
-            String ext = name != null && name.contains(".") ? name.substring(name.lastIndexOf(".")) : "";
-            path = UUID.randomUUID().toString() + ext;
+            path = generatePath(file.getOriginalFilename());
         }
+        try (InputStream in = file.getInputStream()) {
+            return uploadStream(in, file.getSize(), file.getContentType(), bucket, path);
+        } catch (IOException e) {
+            log.warn("Failed to read upload: path={}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Upload a stream to Supabase Storage (authenticated). The stream is copied straight
+     * into the upstream request body with a fixed Content-Length, so memory use does not
+     * depend on the file size.
+     *
+     * @param in          the content; not closed by this method
+     * @param size        exact number of bytes in the stream
+     * @param contentType MIME type (null for application/octet-stream)
+     * @param bucket      bucket name (null to use default)
+     * @param path        object path within the bucket
+     * @return the path under the bucket, or null on failure
+     */
+    public String uploadStream(InputStream in, long size, String contentType, String bucket, String path) {
+        String bucketName = bucket != null && !bucket.isBlank() ? bucket : defaultBucket;
         String url = buildUploadUrl(bucketName, path);
-        String contentType = file.getContentType();
         if (contentType == null || contentType.isBlank()) {
             contentType = "application/octet-stream";
         }
         HttpHeaders headers = createHeaders();
         headers.setContentType(MediaType.parseMediaType(contentType));
+        headers.setContentLength(size);
         try {
-            HttpEntity<byte[]> entity = new HttpEntity<>(file.getBytes(), headers);
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Uploaded to Supabase Storage: bucket={}, path={}", bucketName, path);
+            Boolean ok = upstreamGuard.call(UpstreamGuard.Compartment.UPLOADS, "objects.upload",
+                    () -> restTemplate.execute(url, HttpMethod.POST, request -> {
+                        request.getHeaders().putAll(headers);
+                        if (request instanceof StreamingHttpOutputMessage streaming) {
+                            streaming.setBody(out -> StreamUtils.copy(in, out));
+                        } else {
+                            StreamUtils.copy(in, request.getBody());
+                        }
+                    }, response -> response.getStatusCode().is2xxSuccessful()));
+            if (Boolean.TRUE.equals(ok)) {
+                upstreamMetrics.storageBytes("upload").increment(size);
+                storageCacheService.invalidate(bucketName, path);
+                log.info("Uploaded to Supabase Storage: bucket={}, path={}, size={}", bucketName, path, size);
                 return path;
             }
         } catch (Exception e) {
@@ -98,6 +341,15 @@ public class SupabaseStorageService {
         return null;
     }
 
+    /**
+     * Generates a unique object path, keeping the extension of the original file name.
+     */
+    public String generatePath(String originalFilename) {
+        String ext = originalFilename != null && originalFilename.contains(".")
+                ? originalFilename.substring(originalFilename.lastIndexOf(".")) : "";
+        return UUID.randomUUID().toString() + ext;
+    }
+
     /**
      * Upload using the default bucket; path is auto-generated if not provided.
      */
@@ -0,0 +1,471 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.UploadSessionRequest;
+import com.avatarstore.dto.UploadSessionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Chunked, resumable uploads of large avatar bundles. A session pre-allocates a staging
+ * file on local disk; chunks are written at their byte offsets (in any order, possibly in
+ * parallel) and the received ranges are tracked. On completion the whole file is checked
+ * against the expected SHA-256 and streamed to Supabase Storage. Session state is kept
+ * next to the staging file, so uploads can also be resumed after a restart.
+ * <p>
+ * Each session belongs to the user who created it and is invisible to everyone else. Staging
+ * disk is bounded by max-sessions, max-sessions-per-user and max-staged-size (the sum of the
+ * declared sizes of all open sessions, since the staging file is allocated up front).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionService {
+
+    private static final String DATA_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".json";
+
+    private final SupabaseStorageService supabaseStorageService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${storage.uploads.dir:./data/uploads}")
+    private Path dir;
+
+    @Value("${storage.uploads.max-size:2GB}")
+    private DataSize maxSize;
+
+    @Value("${storage.uploads.max-sessions:100}")
+    private int maxSessions;
+
+    @Value("${storage.uploads.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    @Value("${storage.uploads.max-staged-size:20GB}")
+    private DataSize maxStagedSize;
+
+    /** Sessions without any activity for this long are discarded. */
+    @Value("${storage.uploads.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    @Value("${supabase.storage.download-buffer-size:65536}")
+    private int bufferSize;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /** Persisted form of a session; received holds [start, end) pairs. */
+    private record Meta(String id, UUID owner, String bucket, String path, long size, String contentType,
+                        String sha256, long updatedAt, List<long[]> received) {}
+
+    private static final class Session {
+        final String id;
+        final UUID owner;
+        final String bucket;
+        final String path;
+        final long size;
+        final String contentType;
+        String sha256;
+        long updatedAt;
+        boolean completing;
+        /** chunk writes in progress; completion must not read the staging file while any is running */
+        int writers;
+        /** set once the session is deleted, so late writers do not re-create its metadata */
+        boolean removed;
+        /** start -> end (exclusive), non-overlapping and non-adjacent */
+        final TreeMap<Long, Long> received = new TreeMap<>();
+
+        Session(String id, UUID owner, String bucket, String path, long size, String contentType, String sha256) {
+            this.id = id;
+            this.owner = owner;
+            this.bucket = bucket;
+            this.path = path;
+            this.size = size;
+            this.contentType = contentType;
+            this.sha256 = sha256;
+            this.updatedAt = System.currentTimeMillis();
+        }
+
+        void addRange(long start, long end) {
+            Map.Entry<Long, Long> before = received.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Map.Entry<Long, Long> after;
+            while ((after = received.ceilingEntry(start)) != null && after.getKey() <= end) {
+                end = Math.max(end, after.getValue());
+                received.remove(after.getKey());
+            }
+            received.put(start, end);
+        }
+
+        long receivedBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                total += range.getValue() - range.getKey();
+            }
+            return total;
+        }
+
+        boolean isComplete() {
+            return size == 0 || (received.size() == 1 && received.firstKey() == 0 && received.firstEntry().getValue() == size);
+        }
+
+        UploadSessionStatus status() {
+            List<UploadSessionStatus.ByteRange> missing = new ArrayList<>();
+            long next = 0;
+            for (Map.Entry<Long, Long> range : received.entrySet()) {
+                if (range.getKey() > next) {
+                    missing.add(new UploadSessionStatus.ByteRange(next, range.getKey() - 1));
+                }
+                next = range.getValue();
+            }
+            if (next < size) {
+                missing.add(new UploadSessionStatus.ByteRange(next, size - 1));
+            }
+            return new UploadSessionStatus(id, path, size, receivedBytes(), missing);
+        }
+
+        Meta toMeta() {
+            List<long[]> ranges = new ArrayList<>();
+            received.forEach((start, end) -> ranges.add(new long[]{start, end}));
+            return new Meta(id, owner, bucket, path, size, contentType, sha256, updatedAt, ranges);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(META_SUFFIX)).toList()) {
+                    try {
+                        Meta meta = objectMapper.readValue(file.toFile(), Meta.class);
+                        Session session = new Session(meta.id(), meta.owner(), meta.bucket(), meta.path(),
+                                meta.size(), meta.contentType(), meta.sha256());
+                        session.updatedAt = meta.updatedAt();
+                        if (meta.received() != null) {
+                            meta.received().forEach(range -> session.addRange(range[0], range[1]));
+                        }
+                        sessions.put(session.id, session);
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable upload session {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+            expireSessions();
+            log.info("Upload sessions loaded: dir={}, sessions={}", dir, sessions.size());
+        } catch (IOException e) {
+            log.error("Could not load upload sessions from {}", dir, e);
+        }
+    }
+
+    /**
+     * Starts an upload session for the given user and allocates its staging file.
+     *
+     * @throws IllegalArgumentException if the size is missing, negative or above the limit
+     * @throws IllegalStateException    if the user or the server already has too many sessions
+     *                                  or staged bytes
+     */
+    public UploadSessionStatus create(UploadSessionRequest request, UUID owner) throws IOException {
+        if (request.size() == null || request.size() < 0) {
+            throw new IllegalArgumentException("size is required");
+        }
+        if (request.size() > maxSize.toBytes()) {
+            throw new IllegalArgumentException("size exceeds the maximum of " + maxSize.toBytes() + " bytes");
+        }
+        expireSessions();
+        String path = request.path() != null && !request.path().isBlank()
+                ? request.path() : supabaseStorageService.generatePath(request.filename());
+        Session session = new Session(UUID.randomUUID().toString(), owner, null, path, request.size(),
+                request.contentType(), normalizeChecksum(request.sha256()));
+        reserve(session);
+        try (FileChannel channel = FileChannel.open(dataFile(session.id), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            if (session.size > 0) {
+                // sparse on most filesystems; fixes the file length so chunks can land anywhere
+                channel.write(ByteBuffer.allocate(1), session.size - 1);
+            }
+        } catch (IOException e) {
+            delete(session);
+            throw e;
+        }
+        synchronized (session) {
+            saveMeta(session);
+        }
+        log.info("Upload session created: uploadId={}, path={}, size={}", session.id, path, session.size);
+        return session.status();
+    }
+
+    /**
+     * @throws RuntimeException ("Upload session not found") if the session does not exist or
+     *                          belongs to another user (true of every method taking an uploadId)
+     */
+    public UploadSessionStatus getStatus(String uploadId, UUID owner) {
+        Session session = getSession(uploadId, owner);
+        synchronized (session) {
+            return session.status();
+        }
+    }
+
+    /**
+     * Writes a chunk at the given offset. Re-sending a range that was already received is
+     * allowed (the bytes are overwritten). If the stream breaks part-way, the bytes that
+     * did arrive are kept and reported as received.
+     *
+     * @param length chunk length (the request's Content-Length); a chunk that does not fit is
+     *               rejected before anything is written
+     * @throws IllegalArgumentException if the length is unknown, the chunk does not fit inside the
+     *                                  object, or the stream is longer than the declared length
+     *                                  (nothing of the chunk is then recorded as received)
+     * @throws IllegalStateException    if the session is already being completed
+     */
+    public UploadSessionStatus writeChunk(String uploadId, UUID owner, long offset, long length, InputStream in)
+            throws IOException {
+        Session session = getSession(uploadId, owner);
+        if (length < 0) {
+            throw new IllegalArgumentException("Content-Length is required");
+        }
+        if (offset < 0 || offset + length > session.size) {
+            throw new IllegalArgumentException("Chunk is outside the object (size " + session.size + ")");
+        }
+        synchronized (session) {
+            if (session.completing) {
+                throw new IllegalStateException("Upload is being completed");
+            }
+            session.writers++;
+        }
+        long end = offset + length;
+        long position = offset;
+        boolean overrun = false;
+        try (FileChannel channel = FileChannel.open(dataFile(session.id), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while (position < end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+            }
+            if (position == end && in.read() != -1) {
+                overrun = true;
+                throw new IllegalArgumentException("Chunk is longer than its Content-Length");
+            }
+        } finally {
+            synchronized (session) {
+                session.writers--;
+                if (!session.removed) {
+                    if (position > offset && !overrun) {
+                        session.addRange(offset, position);
+                    }
+                    session.updatedAt = System.currentTimeMillis();
+                    saveMeta(session);
+                }
+            }
+        }
+        synchronized (session) {
+            return session.status();
+        }
+    }
+
+    /**
+     * Verifies the assembled file and uploads it to Supabase Storage. On success the session
+     * is removed; if the upstream upload fails the session is kept so completion can be retried.
+     *
+     * @param sha256 expected SHA-256 (hex); overrides the one given when the session was created
+     * @return the stored path, or null if the upload to Supabase Storage failed
+     * @throws IllegalStateException    if bytes are still missing, chunks are still being written, or the
+     *                                  upload is already being completed
+     * @throws IllegalArgumentException if no checksum was given or the checksum does not match
+     *                                  (the received ranges are then reset, so the client must re-send)
+     */
+    public String complete(String uploadId, UUID owner, String sha256) throws IOException {
+        Session session = getSession(uploadId, owner);
+        synchronized (session) {
+            if (session.completing) {
+                throw new IllegalStateException("Upload is being completed");
+            }
+            if (session.writers > 0) {
+                // a re-sent chunk may still be overwriting bytes that would be checksummed and uploaded
+                throw new IllegalStateException("Chunks are still being written; retry when they have finished");
+            }
+            if (!session.isComplete()) {
+                throw new IllegalStateException("Upload is incomplete: " + session.receivedBytes() + " of "
+                        + session.size + " bytes received");
+            }
+            String expected = sha256 != null && !sha256.isBlank() ? normalizeChecksum(sha256) : session.sha256;
+            if (expected == null) {
+                throw new IllegalArgumentException("sha256 is required");
+            }
+            session.sha256 = expected;
+            session.completing = true;
+        }
+        try {
+            String actual = checksum(dataFile(session.id));
+            if (!actual.equals(session.sha256)) {
+                synchronized (session) {
+                    session.received.clear();
+                    if (!session.removed) {
+                        saveMeta(session);
+                    }
+                }
+                log.warn("Upload checksum mismatch: uploadId={}, expected={}, actual={}", session.id, session.sha256, actual);
+                throw new IllegalArgumentException("Checksum mismatch");
+            }
+            String storedPath;
+            try (InputStream in = Files.newInputStream(dataFile(session.id))) {
+                storedPath = supabaseStorageService.uploadStream(in, session.size, session.contentType,
+                        session.bucket, session.path);
+            }
+            if (storedPath != null) {
+                delete(session);
+                log.info("Upload session completed: uploadId={}, path={}, size={}", session.id, storedPath, session.size);
+            }
+            return storedPath;
+        } finally {
+            synchronized (session) {
+                session.completing = false;
+            }
+        }
+    }
+
+    /**
+     * Abandons an upload and deletes its staged bytes.
+     */
+    public void abort(String uploadId, UUID owner) {
+        delete(getSession(uploadId, owner));
+    }
+
+    /**
+     * Adds the session if the caps allow it; the check and the insert are atomic so concurrent
+     * creates cannot overshoot.
+     */
+    private void reserve(Session session) {
+        synchronized (sessions) {
+            long staged = 0;
+            int owned = 0;
+            for (Session existing : sessions.values()) {
+                staged += existing.size;
+                if (existing.owner != null && existing.owner.equals(session.owner)) {
+                    owned++;
+                }
+            }
+            if (owned >= maxSessionsPerUser) {
+                throw new IllegalStateException("Too many open uploads; complete or abort one first");
+            }
+            if (sessions.size() >= maxSessions || staged + session.size > maxStagedSize.toBytes()) {
+                log.warn("Upload session rejected, staging full: sessions={}, stagedBytes={}, requested={}",
+                        sessions.size(), staged, session.size);
+                throw new IllegalStateException("Upload capacity is exhausted; try again later");
+            }
+            sessions.put(session.id, session);
+        }
+    }
+
+    private Session getSession(String uploadId, UUID owner) {
+        Session session = uploadId != null ? sessions.get(uploadId) : null;
+        if (session == null || session.owner == null || !session.owner.equals(owner)) {
+            throw new RuntimeException("Upload session not found");
+        }
+        return session;
+    }
+
+    private void expireSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtl.toMillis();
+        for (Session session : sessions.values()) {
+            boolean expired;
+            synchronized (session) {
+                expired = !session.completing && session.writers == 0 && session.updatedAt < cutoff;
+            }
+            if (expired) {
+                log.info("Upload session expired: uploadId={}, path={}", session.id, session.path);
+                delete(session);
+            }
+        }
+    }
+
+    private void delete(Session session) {
+        synchronized (session) {
+            session.removed = true;
+        }
+        sessions.remove(session.id);
+        try {
+            Files.deleteIfExists(dataFile(session.id));
+            Files.deleteIfExists(metaFile(session.id));
+        } catch (IOException e) {
+            log.warn("Failed to delete staged upload {}", session.id, e);
+        }
+    }
+
+    /** Must be called while holding the session's monitor. */
+    private void saveMeta(Session session) {
+        Path temp = dir.resolve(session.id + META_SUFFIX + ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), session.toMeta());
+            Files.move(temp, metaFile(session.id), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the upload still works in this process; only resuming after a restart is affected
+            log.warn("Failed to save upload session {}", session.id, e);
+        }
+    }
+
+    private String checksum(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ))) {
+            byte[] buffer = new byte[bufferSize];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String normalizeChecksum(String sha256) {
+        if (sha256 == null || sha256.isBlank()) {
+            return null;
+        }
+        String hex = sha256.trim().toLowerCase();
+        if (!hex.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("sha256 must be 64 hex characters");
+        }
+        return hex;
+    }
+
+    private Path dataFile(String id) {
+        return dir.resolve(id + DATA_SUFFIX);
+    }
+
+    private Path metaFile(String id) {
+        return dir.resolve(id + META_SUFFIX);
+    }
+}
@@ -0,0 +1,231 @@
+package com.avatarstore.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent upstream calls (Supabase, Stripe) concurrently and waits for all of them.
+ * If any call fails, the first failure is rethrown to the caller unchanged, so callers handle
+ * errors exactly as they would sequentially. The other calls are cancelled: those not started
+ * yet never run, and running ones are interrupted. An interrupt ends waits for a bulkhead slot
+ * or pooled connection (and socket I/O on virtual threads), but a platform thread blocked in a
+ * socket read finishes that call; its result is then discarded.
+ * <p>
+ * Calls run on virtual threads when spring.threads.virtual.enabled is set (Java 21+), otherwise
+ * on a bounded pool of platform threads. With upstream.fan-out.enabled=false (the default)
+ * everything runs sequentially on the calling thread. Calls made from inside a fan-out task
+ * also run inline, so nesting cannot starve the pool. The request's {@link UpstreamTrace} follows
+ * each task to its thread.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UpstreamFanOut {
+
+    private static final ThreadLocal<Boolean> IN_FAN_OUT = new ThreadLocal<>();
+
+    private final Environment environment;
+
+    @Value("${upstream.fan-out.enabled:false}")
+    private boolean enabled;
+
+    /** Platform threads used when virtual threads are not active. */
+    @Value("${upstream.fan-out.max-threads:32}")
+    private int maxThreads;
+
+    /** Maximum ids per PostgREST in.(...) filter; larger lookups are split into concurrent batches. */
+    @Value("${upstream.fan-out.batch-size:100}")
+    private int batchSize;
+
+    private Executor executor;
+    private ExecutorService platformPool;
+
+    @PostConstruct
+    public void init() {
+        boolean virtualRequested = environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+        boolean virtualActive = Threading.VIRTUAL.isActive(environment);
+        if (virtualRequested && !virtualActive) {
+            log.warn("spring.threads.virtual.enabled is set but virtual threads need Java 21+ (running {}); "
+                    + "using platform threads", Runtime.version().feature());
+        }
+        if (!enabled) {
+            return;
+        }
+        if (virtualActive) {
+            SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor("upstream-");
+            virtual.setVirtualThreads(true);
+            executor = virtual;
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "upstream-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            platformPool = pool;
+            executor = pool;
+        }
+        log.info("Upstream fan-out enabled on {} threads", virtualActive ? "virtual" : maxThreads + " platform");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (platformPool != null) {
+            platformPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the tasks concurrently and returns their results in task order.
+     *
+     * @throws RuntimeException the first failure of any task (the others are cancelled, see above)
+     */
+    public <T> List<T> all(List<? extends Supplier<? extends T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (executor == null || tasks.size() < 2 || Boolean.TRUE.equals(IN_FAN_OUT.get())) {
+            for (Supplier<? extends T> task : tasks) {
+                results.add(task.get());
+            }
+            return results;
+        }
+        // FutureTasks rather than CompletableFutures: only their cancel(true) interrupts the worker
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        AtomicInteger remaining = new AtomicInteger(tasks.size() - 1);
+        // set before cancelling, so a worker freed by an interrupt cannot start a queued task
+        AtomicBoolean abandoned = new AtomicBoolean();
+        // completes when every task has succeeded, or exceptionally with the first failure
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        // the first task runs on the calling thread, which would otherwise just wait
+        for (Supplier<? extends T> task : tasks.subList(1, tasks.size())) {
+            Supplier<T> traced = UpstreamTrace.propagate(() -> runMarked(task));
+            FutureTask<T> future = new FutureTask<>(() -> {
+                if (abandoned.get()) {
+                    throw new CancellationException("Fan-out abandoned");
+                }
+                return traced.get();
+            }) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    try {
+                        get();
+                        if (remaining.decrementAndGet() == 0) settled.complete(null);
+                    } catch (ExecutionException e) {
+                        settled.completeExceptionally(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            futures.add(future);
+            executor.execute(future);
+        }
+        try {
+            results.add(runMarked(tasks.get(0)));
+            settled.get();
+            for (FutureTask<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (RuntimeException e) {
+            cancel(futures, abandoned);
+            throw e;
+        } catch (InterruptedException e) {
+            cancel(futures, abandoned);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for upstream calls");
+        } catch (ExecutionException e) {
+            cancel(futures, abandoned);
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static void cancel(List<? extends FutureTask<?>> futures, AtomicBoolean abandoned) {
+        abandoned.set(true);
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Runs two different calls concurrently and combines their results.
+     *
+     * @throws RuntimeException the first failure of either call
+     */
+    @SuppressWarnings("unchecked")
+    public <A, B, R> R both(Supplier<A> first, Supplier<B> second, BiFunction<A, B, R> combine) {
+        List<Object> results = all(List.<Supplier<Object>>of(first::get, second::get));
+        return combine.apply((A) results.get(0), (B) results.get(1));
+    }
+
+    /**
+     * Splits keys into batches of at most upstream.fan-out.batch-size, preserving iteration order.
+     */
+    public <K> List<Set<K>> batches(Collection<K> keys) {
+        List<Set<K>> batches = new ArrayList<>();
+        Set<K> batch = new LinkedHashSet<>();
+        for (K key : keys) {
+            batch.add(key);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new LinkedHashSet<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static <T> T runMarked(Supplier<T> task) {
+        Boolean previous = IN_FAN_OUT.get();
+        IN_FAN_OUT.set(Boolean.TRUE);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) IN_FAN_OUT.remove();
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        return new RuntimeException(error);
+    }
+}
@@ -0,0 +1,356 @@
+package com.avatarstore.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isolates the upstream dependencies from each other. Every call belongs to a compartment
+ * (catalog, purchases, storage, uploads, Stripe), and each compartment has:
+ * <ul>
+ * <li>a bulkhead: at most max-concurrent calls in flight. A call that finds it full waits up to
+ * max-wait and then fails fast, so a slow upstream ties up a bounded number of request threads
+ * and the other compartments keep theirs;</li>
+ * <li>a circuit breaker over the last window-size calls. Once failure-rate-threshold percent of
+ * them failed (5xx, I/O errors or calls slower than slow-call-duration), calls are rejected for
+ * open-duration. After that, half-open-probes trial calls go through: if all succeed the
+ * breaker closes, and any failure opens it again.</li>
+ * </ul>
+ * Uploads have their own compartment: they hold a slot for the whole transfer and take as long
+ * as the client's connection, so they must neither starve downloads of slots nor open the
+ * storage breaker by being slow. Per compartment, upstream.circuit-breaker.&lt;compartment&gt;.
+ * slow-call-duration overrides the default; 0 stops counting slow calls (the uploads default).
+ * <p>
+ * Rejected calls throw {@link UpstreamUnavailableException} without touching the network.
+ * 4xx responses mean the upstream is up, so they count as successes.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UpstreamGuard {
+
+    public enum Compartment {
+        CATALOG("catalog", UpstreamMetrics.SUPABASE),
+        PURCHASES("purchases", UpstreamMetrics.SUPABASE),
+        STORAGE("storage", UpstreamMetrics.STORAGE),
+        UPLOADS("uploads", UpstreamMetrics.STORAGE),
+        STRIPE("stripe", UpstreamMetrics.STRIPE);
+
+        private final String key;
+        private final String dependency;
+
+        Compartment(String key, String dependency) {
+            this.key = key;
+            this.dependency = dependency;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public String dependency() {
+            return dependency;
+        }
+    }
+
+    private final UpstreamMetrics upstreamMetrics;
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    @Value("${upstream.bulkhead.enabled:true}")
+    private boolean bulkheadEnabled;
+
+    /** Default for compartments without upstream.bulkhead.&lt;compartment&gt;.max-concurrent. */
+    @Value("${upstream.bulkhead.max-concurrent:50}")
+    private int defaultMaxConcurrent;
+
+    @Value("${upstream.bulkhead.max-wait:1s}")
+    private Duration defaultMaxWait;
+
+    @Value("${upstream.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+
+    @Value("${upstream.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    /** Calls the window must hold before the failure rate is evaluated. */
+    @Value("${upstream.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${upstream.circuit-breaker.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${upstream.circuit-breaker.slow-call-duration:5s}")
+    private Duration slowCallDuration;
+
+    @Value("${upstream.circuit-breaker.open-duration:30s}")
+    private Duration openDuration;
+
+    @Value("${upstream.circuit-breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    private final Map<Compartment, Guard> guards = new EnumMap<>(Compartment.class);
+
+    @PostConstruct
+    public void init() {
+        for (Compartment compartment : Compartment.values()) {
+            String prefix = "upstream.bulkhead." + compartment.key();
+            int maxConcurrent = environment.getProperty(prefix + ".max-concurrent", Integer.class, defaultMaxConcurrent);
+            Duration maxWait = environment.getProperty(prefix + ".max-wait", Duration.class, defaultMaxWait);
+            Duration slowCall = environment.getProperty("upstream.circuit-breaker." + compartment.key() + ".slow-call-duration",
+                    Duration.class, slowCallDuration);
+            Guard guard = new Guard(compartment, maxConcurrent, maxWait, slowCall);
+            guards.put(compartment, guard);
+            Gauge.builder("upstream.bulkhead.available", guard.bulkhead, Semaphore::availablePermits)
+                    .description("Free bulkhead slots per compartment")
+                    .tag("compartment", compartment.key())
+                    .register(meterRegistry);
+            Gauge.builder("upstream.circuit.state", guard, g -> g.state.ordinal())
+                    .description("Circuit breaker state per compartment: 0 closed, 1 open, 2 half-open")
+                    .tag("compartment", compartment.key())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Runs the call inside the compartment's bulkhead and circuit breaker, timed by
+     * {@link UpstreamMetrics} under the compartment's dependency.
+     *
+     * @throws UpstreamUnavailableException if the compartment rejected the call
+     */
+    public <T, E extends Exception> T call(Compartment compartment, String operation,
+                                           UpstreamMetrics.Call<T, E> call) throws E {
+        try (Permit permit = acquire(compartment)) {
+            try {
+                T result = upstreamMetrics.record(compartment.dependency(), operation, call);
+                permit.succeeded();
+                return result;
+            } catch (Exception e) {
+                permit.failed(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return true if the error (or one of its causes) means the upstream is unhealthy or was not
+     * called: a 5xx, an I/O error or timeout, or a rejection by this guard. False for 4xx and
+     * application errors.
+     */
+    public static boolean isUpstreamFailure(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof UpstreamUnavailableException) {
+                return true;
+            }
+        }
+        String outcome = UpstreamMetrics.outcome(error);
+        return "server_error".equals(outcome) || "io_error".equals(outcome);
+    }
+
+    /**
+     * Takes a slot for a call whose outcome is reported separately (e.g. a streamed download,
+     * judged by its response status). The permit must be closed once the call is done.
+     *
+     * @throws UpstreamUnavailableException if the compartment rejected the call
+     */
+    public Permit acquire(Compartment compartment) {
+        return guards.get(compartment).acquire();
+    }
+
+    /**
+     * A slot in a compartment. Report the outcome with one of succeeded/completed/failed, then
+     * close it to free the bulkhead slot.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Guard guard;
+        private final boolean probe;
+        private final long startNanos = System.nanoTime();
+        private boolean reported;
+        private boolean closed;
+
+        private Permit(Guard guard, boolean probe) {
+            this.guard = guard;
+            this.probe = probe;
+        }
+
+        public void succeeded() {
+            report(false);
+        }
+
+        /** Reports a call that got a response; 5xx counts as a failure. */
+        public void completed(HttpStatusCode status) {
+            report(status.is5xxServerError());
+        }
+
+        public void failed(Exception error) {
+            report(isUpstreamFailure(error));
+        }
+
+        private void report(boolean failure) {
+            if (reported) {
+                return;
+            }
+            reported = true;
+            boolean slow = guard.slowCallNanos > 0 && System.nanoTime() - startNanos > guard.slowCallNanos;
+            guard.onResult(probe, failure || slow);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!reported) {
+                guard.onAbandoned(probe);
+            }
+            if (bulkheadEnabled) {
+                guard.bulkhead.release();
+            }
+        }
+    }
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** Bulkhead and circuit breaker of one compartment; breaker state is guarded by this. */
+    private final class Guard {
+
+        private final Compartment compartment;
+        private final Semaphore bulkhead;
+        private final long maxWaitNanos;
+        private final long slowCallNanos;
+        private final Counter rejectedFull;
+        private final Counter rejectedOpen;
+
+        private final boolean[] window = new boolean[Math.max(1, windowSize)];
+        private int windowCalls;
+        private int windowFailures;
+        private int windowNext;
+        private volatile State state = State.CLOSED;
+        private long openUntilNanos;
+        private int probesStarted;
+        private int probesSucceeded;
+
+        Guard(Compartment compartment, int maxConcurrent, Duration maxWait, Duration slowCall) {
+            this.compartment = compartment;
+            this.bulkhead = new Semaphore(maxConcurrent, true);
+            this.maxWaitNanos = maxWait.toNanos();
+            this.slowCallNanos = slowCall.toNanos();
+            this.rejectedFull = rejected("bulkhead-full");
+            this.rejectedOpen = rejected("circuit-open");
+        }
+
+        private Counter rejected(String reason) {
+            return Counter.builder("upstream.rejected")
+                    .description("Upstream calls rejected without being sent")
+                    .tag("compartment", compartment.key())
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        Permit acquire() {
+            boolean probe = false;
+            if (circuitBreakerEnabled) {
+                synchronized (this) {
+                    if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+                        state = State.HALF_OPEN;
+                        probesStarted = 0;
+                        probesSucceeded = 0;
+                        log.info("Circuit half-open, probing: compartment={}", compartment.key());
+                    }
+                    if (state == State.OPEN || (state == State.HALF_OPEN && probesStarted >= halfOpenProbes)) {
+                        rejectedOpen.increment();
+                        throw new UpstreamUnavailableException(compartment, "circuit open");
+                    }
+                    if (state == State.HALF_OPEN) {
+                        probesStarted++;
+                        probe = true;
+                    }
+                }
+            }
+            if (bulkheadEnabled && !bulkhead.tryAcquire()) {
+                boolean acquired;
+                try {
+                    acquired = bulkhead.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    acquired = false;
+                }
+                if (!acquired) {
+                    onAbandoned(probe);
+                    rejectedFull.increment();
+                    throw new UpstreamUnavailableException(compartment, "too many concurrent calls");
+                }
+            }
+            return new Permit(this, probe);
+        }
+
+        synchronized void onResult(boolean probe, boolean failure) {
+            if (!circuitBreakerEnabled) {
+                return;
+            }
+            if (probe && state == State.HALF_OPEN) {
+                if (failure) {
+                    log.warn("Circuit probe failed, reopening for {}: compartment={}", openDuration, compartment.key());
+                    open();
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    close();
+                }
+            } else if (!probe && state == State.CLOSED) {
+                // calls that started before a state change are not counted against the new state
+                if (windowCalls == window.length) {
+                    if (window[windowNext]) windowFailures--;
+                } else {
+                    windowCalls++;
+                }
+                window[windowNext] = failure;
+                if (failure) windowFailures++;
+                windowNext = (windowNext + 1) % window.length;
+                if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+                    log.warn("Circuit opened for {}: compartment={}, recentFailures={}/{}",
+                            openDuration, compartment.key(), windowFailures, windowCalls);
+                    open();
+                }
+            }
+        }
+
+        /** A probe that ended without an outcome frees its slot for another probe. */
+        synchronized void onAbandoned(boolean probe) {
+            if (probe && state == State.HALF_OPEN) {
+                probesStarted--;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + openDuration.toNanos();
+            resetWindow();
+        }
+
+        private void close() {
+            log.info("Circuit closed: compartment={}", compartment.key());
+            state = State.CLOSED;
+            resetWindow();
+        }
+
+        private void resetWindow() {
+            windowCalls = 0;
+            windowFailures = 0;
+            windowNext = 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.avatarstore.service;
+
+import com.stripe.exception.StripeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timers for every call to an upstream dependency, as upstream.calls{dependency, operation,
+ * outcome}, and byte counters for Supabase Storage transfers (upstream.storage.bytes{direction}).
+ * Outcomes are success, client_error / server_error (HTTP 4xx / 5xx), io_error (connect, read
+ * or pool timeouts) and error (anything else, e.g. an unreadable response). Each call is also
+ * added to the current request's {@link UpstreamTrace}, if there is one.
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamMetrics {
+
+    public static final String SUPABASE = "supabase";
+    public static final String STORAGE = "supabase-storage";
+    public static final String STRIPE = "stripe";
+
+    static final String CALLS = "upstream.calls";
+    static final String STORAGE_BYTES = "upstream.storage.bytes";
+
+    /** An upstream call; E lets a checked exception such as StripeException pass through. */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Runs and times the call; the outcome is taken from the exception it throws, if any.
+     */
+    public <T, E extends Exception> T record(String dependency, String operation, Call<T, E> call) throws E {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } catch (Exception e) {
+            outcome = outcome(e);
+            throw e;
+        } finally {
+            stop(sample, dependency, operation, outcome);
+        }
+    }
+
+    /**
+     * Starts timing a call whose outcome is only known from a response status
+     * (see {@link #stop(Timer.Sample, String, String, HttpStatusCode)}).
+     */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, String dependency, String operation, HttpStatusCode status) {
+        stop(sample, dependency, operation, outcome(status));
+    }
+
+    public void stop(Timer.Sample sample, String dependency, String operation, Exception error) {
+        stop(sample, dependency, operation, outcome(error));
+    }
+
+    private void stop(Timer.Sample sample, String dependency, String operation, String outcome) {
+        long nanos = sample.stop(timer(dependency, operation, outcome));
+        UpstreamTrace.record(dependency, operation, nanos);
+    }
+
+    /** Counts Storage bytes moved in the given direction ("download" or "upload"). */
+    public Counter storageBytes(String direction) {
+        return Counter.builder(STORAGE_BYTES)
+                .description("Bytes transferred to and from Supabase Storage")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String dependency, String operation, String outcome) {
+        return Timer.builder(CALLS)
+                .description("Calls to Supabase and Stripe")
+                .tag("dependency", dependency)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    static String outcome(HttpStatusCode status) {
+        if (status.is4xxClientError()) return "client_error";
+        if (status.is5xxServerError()) return "server_error";
+        return "success";
+    }
+
+    static String outcome(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof RestClientResponseException response) return outcome(response.getStatusCode());
+            if (e instanceof WebClientResponseException response) return outcome(response.getStatusCode());
+            if (e instanceof StripeException stripe) {
+                return stripe.getStatusCode() != null ? outcome(HttpStatusCode.valueOf(stripe.getStatusCode())) : "io_error";
+            }
+            if (e instanceof ResourceAccessException || e instanceof WebClientRequestException
+                    || e instanceof IOException || e instanceof UncheckedIOException || e instanceof TimeoutException) {
+                return "io_error";
+            }
+        }
+        return "error";
+    }
+}
@@ -0,0 +1,153 @@
+package com.avatarstore.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Upstream calls made while serving one request, counted and timed per dependency and
+ * operation (one operation per service method, e.g. supabase avatars.batch). The trace is
+ * bound to the request thread by the servlet filter; {@link UpstreamMetrics} adds every call
+ * it times, and {@link UpstreamFanOut} carries the trace to its worker threads, so the
+ * times of concurrent calls are summed rather than wall-clock.
+ */
+public final class UpstreamTrace {
+
+    private static final ThreadLocal<UpstreamTrace> CURRENT = new ThreadLocal<>();
+
+    /** Count and total time of one operation. */
+    public record Operation(String dependency, String operation, long calls, long nanos) {
+    }
+
+    private final Map<String, Stat> operations = new ConcurrentHashMap<>();
+
+    private static final class Stat {
+        final String dependency;
+        final String operation;
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Stat(String dependency, String operation) {
+            this.dependency = dependency;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Starts a trace on the current thread; pair with {@link #end()} in a finally block.
+     */
+    public static UpstreamTrace begin() {
+        UpstreamTrace trace = new UpstreamTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Adds a finished call to the current thread's trace, if any.
+     */
+    static void record(String dependency, String operation, long nanos) {
+        UpstreamTrace trace = CURRENT.get();
+        if (trace == null) {
+            return;
+        }
+        Stat stat = trace.operations.computeIfAbsent(dependency + ' ' + operation, key -> new Stat(dependency, operation));
+        stat.calls.increment();
+        stat.nanos.add(nanos);
+    }
+
+    /**
+     * Wraps a task so that calls it makes on another thread count towards the current trace.
+     */
+    static <T> Supplier<T> propagate(Supplier<T> task) {
+        UpstreamTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+        return () -> {
+            UpstreamTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) CURRENT.remove();
+                else CURRENT.set(previous);
+            }
+        };
+    }
+
+    public long calls() {
+        long calls = 0;
+        for (Stat stat : operations.values()) {
+            calls += stat.calls.sum();
+        }
+        return calls;
+    }
+
+    public long nanos() {
+        long nanos = 0;
+        for (Stat stat : operations.values()) {
+            nanos += stat.nanos.sum();
+        }
+        return nanos;
+    }
+
+    /**
+     * @return the operations called so far, most calls first
+     */
+    public List<Operation> operations() {
+        List<Operation> result = new ArrayList<>(operations.size());
+        for (Stat stat : operations.values()) {
+            result.add(new Operation(stat.dependency, stat.operation, stat.calls.sum(), stat.nanos.sum()));
+        }
+        result.sort((a, b) -> a.calls() != b.calls() ? Long.compare(b.calls(), a.calls())
+                : Long.compare(b.nanos(), a.nanos()));
+        return result;
+    }
+
+    /**
+     * Server-Timing header value: the total, then one entry per operation, e.g.
+     * {@code upstream;desc="3 calls";dur=12.5, supabase.avatars.batch;desc="2 calls";dur=8.1}.
+     * Browser dev tools show these next to the request's own timing.
+     */
+    public String serverTiming() {
+        StringBuilder header = new StringBuilder();
+        appendTiming(header, "upstream", calls(), nanos());
+        for (Operation op : operations()) {
+            header.append(", ");
+            appendTiming(header, op.dependency() + '.' + op.operation(), op.calls(), op.nanos());
+        }
+        return header.toString();
+    }
+
+    /**
+     * One-line summary for logs, e.g. {@code supabase avatars.get x12 40.1ms, stripe checkout.sessions.create x1 210.0ms}.
+     */
+    public String summary() {
+        StringBuilder line = new StringBuilder();
+        for (Operation op : operations()) {
+            if (!line.isEmpty()) {
+                line.append(", ");
+            }
+            line.append(op.dependency()).append(' ').append(op.operation())
+                    .append(" x").append(op.calls()).append(' ').append(millis(op.nanos())).append("ms");
+        }
+        return line.toString();
+    }
+
+    private static void appendTiming(StringBuilder header, String name, long calls, long nanos) {
+        header.append(name).append(";desc=\"").append(calls).append(calls == 1 ? " call" : " calls")
+                .append("\";dur=").append(millis(nanos));
+    }
+
+    static String millis(long nanos) {
+        return String.valueOf(Math.round(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1) * 10) / 10.0);
+    }
+}
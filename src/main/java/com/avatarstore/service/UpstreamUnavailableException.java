@@ -0,0 +1,23 @@
+package com.avatarstore.service;
+
+/**
+ * Thrown instead of calling an upstream when its compartment cannot take the call: the
+ * circuit breaker is open, or the bulkhead stayed full for longer than its max-wait.
+ * Nothing was sent upstream, so the operation is safe to retry later.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UpstreamGuard.Compartment compartment;
+
+    public UpstreamUnavailableException(UpstreamGuard.Compartment compartment, String reason) {
+        // no stack trace: these are expected under load and thrown on the fast path
+        super(compartment.key() + " unavailable: " + reason, null, false, false);
+        this.compartment = compartment;
+    }
+
+    public UpstreamGuard.Compartment getCompartment() {
+        return compartment;
+    }
+}
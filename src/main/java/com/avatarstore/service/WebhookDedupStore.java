@@ -0,0 +1,194 @@
+package com.avatarstore.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which Stripe checkout sessions have already been accepted, so duplicate
+ * webhook deliveries are rejected in O(1) before any upstream work, and concurrent
+ * deliveries of the same event collapse to one. Keys expire after a TTL longer than
+ * Stripe's retry window.
+ * <p>
+ * A claim is held in memory until {@link #confirm} is called, once the job is journaled (or
+ * fulfilled inline); only then is it appended to a file that is reloaded on startup. A crash
+ * between claiming and journaling therefore leaves no trace, and Stripe's redelivery is
+ * processed instead of being dropped as a duplicate.
+ */
+@Component
+@Slf4j
+public class WebhookDedupStore {
+
+    private static final String STORE_FILE = "webhook-dedup.tsv";
+
+    @Value("${stripe.webhook.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stripe.webhook.dedup.ttl:7d}")
+    private Duration ttl;
+
+    @Value("${stripe.webhook.queue.dir:./data/webhook-queue}")
+    private Path dir;
+
+    @Value("${stripe.webhook.dedup.compact-after:10000}")
+    private int compactAfter;
+
+    /** expiresAt in epoch millis; durable once written to the file */
+    private record Claim(long expiresAt, boolean durable) {}
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+    private int writesSinceCompaction;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path file = dir.resolve(STORE_FILE);
+            if (Files.exists(file)) {
+                long now = System.currentTimeMillis();
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int tab = line.indexOf('\t');
+                        if (tab <= 0) continue;
+                        try {
+                            long expiresAt = Long.parseLong(line.substring(tab + 1).trim());
+                            String key = line.substring(0, tab);
+                            if (expiresAt > now) {
+                                claims.put(key, new Claim(expiresAt, true));
+                            } else {
+                                claims.remove(key);
+                            }
+                        } catch (NumberFormatException e) {
+                            // torn line from a crash mid-write
+                        }
+                    }
+                }
+            }
+            compact();
+            log.info("Webhook dedup store loaded: {} keys", claims.size());
+        } catch (IOException e) {
+            log.error("Could not load webhook dedup store from {}; continuing in memory only", dir, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Failed to close webhook dedup store", e);
+            }
+        }
+    }
+
+    /**
+     * Atomically claims a key, in memory only: pair with {@link #confirm} once the work is
+     * safely recorded, or {@link #release} if it failed.
+     *
+     * @return true if this caller claimed it; false if it was already claimed and has not expired
+     */
+    public boolean claim(String key) {
+        if (!enabled || key == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + ttl.toMillis();
+        boolean[] claimed = {false};
+        claims.compute(key, (k, existing) -> {
+            if (existing != null && existing.expiresAt() > now) {
+                return existing;
+            }
+            claimed[0] = true;
+            return new Claim(expiresAt, false);
+        });
+        return claimed[0];
+    }
+
+    /**
+     * Makes a claim survive restarts. Also claims the key if it is not held, as for jobs
+     * replayed from the journal whose claim was never written.
+     */
+    public void confirm(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Claim confirmed = claims.compute(key, (k, existing) -> existing != null && existing.expiresAt() > now
+                ? new Claim(existing.expiresAt(), true)
+                : new Claim(now + ttl.toMillis(), true));
+        persist(key, confirmed.expiresAt());
+    }
+
+    /**
+     * Releases a claim so a later delivery of the same event is processed again
+     * (used when processing failed permanently).
+     */
+    public void release(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        Claim released = claims.remove(key);
+        if (released != null && released.durable()) {
+            persist(key, 0);
+        }
+    }
+
+    private synchronized void persist(String key, long expiresAt) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(key + "\t" + expiresAt + "\n");
+            writer.flush();
+            if (++writesSinceCompaction >= compactAfter) {
+                compact();
+            }
+        } catch (IOException e) {
+            // the in-memory claim still protects this process; only restarts lose it
+            log.warn("Failed to persist webhook dedup key {}", key, e);
+        }
+    }
+
+    /** Rewrites the file with only unexpired durable keys and reopens it for appending. */
+    private synchronized void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        claims.values().removeIf(claim -> claim.expiresAt() <= now);
+        Path file = dir.resolve(STORE_FILE);
+        Path temp = dir.resolve(STORE_FILE + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Claim> entry : claims.entrySet()) {
+                    if (entry.getValue().durable()) {
+                        out.write(entry.getKey() + "\t" + entry.getValue().expiresAt() + "\n");
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writesSinceCompaction = 0;
+        } finally {
+            // whether or not the rewrite worked, appends go to whatever file is now in place
+            close();
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.CheckoutFulfillment;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only file journal for webhook fulfillment jobs. Each job is written (and
+ * fsynced) as an "enqueue" line before the webhook is acknowledged, and a "done" line
+ * is appended once it has been processed, so jobs that were in flight during a crash
+ * or restart are replayed on startup. The file is rewritten with only the pending
+ * jobs on startup and whenever enough jobs have completed.
+ * <p>
+ * Jobs that can never succeed as they are (e.g. an unknown version id) are moved to a
+ * separate dead-letter file, which keeps them until they are replayed into the journal.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookJournal {
+
+    private static final String JOURNAL_FILE = "webhook-journal.jsonl";
+    private static final String DEAD_LETTER_FILE = "webhook-dead-letter.jsonl";
+    private static final String OP_ENQUEUE = "enqueue";
+    private static final String OP_DONE = "done";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${stripe.webhook.queue.dir:./data/webhook-queue}")
+    private Path dir;
+
+    @Value("${stripe.webhook.queue.compact-after:1000}")
+    private int compactAfter;
+
+    private FileChannel channel;
+    private final Map<Long, CheckoutFulfillment> pending = new LinkedHashMap<>();
+    private long nextSeq = 1;
+    private int completedSinceCompaction;
+    private int deadLetters;
+
+    private record Line(String op, long seq, CheckoutFulfillment job) {}
+
+    private record DeadLetter(CheckoutFulfillment job, String error, String failedAt) {}
+
+    /**
+     * Opens the journal, replays it and compacts it.
+     *
+     * @return jobs that were enqueued but never completed, in enqueue order, keyed by sequence number
+     */
+    public synchronized Map<Long, CheckoutFulfillment> open() throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(JOURNAL_FILE);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String raw;
+                while ((raw = reader.readLine()) != null) {
+                    if (raw.isBlank()) continue;
+                    Line line;
+                    try {
+                        line = objectMapper.readValue(raw, Line.class);
+                    } catch (IOException e) {
+                        // a torn final line from a crash mid-write; everything before it is intact
+                        log.warn("Skipping unreadable webhook journal line: {}", e.getMessage());
+                        continue;
+                    }
+                    if (OP_ENQUEUE.equals(line.op())) {
+                        pending.put(line.seq(), line.job());
+                    } else if (OP_DONE.equals(line.op())) {
+                        pending.remove(line.seq());
+                    }
+                    nextSeq = Math.max(nextSeq, line.seq() + 1);
+                }
+            }
+        }
+        compact();
+        deadLetters = readDeadLetters().size();
+        log.info("Webhook journal opened: dir={}, pending={}, deadLetters={}", dir, pending.size(), deadLetters);
+        return new LinkedHashMap<>(pending);
+    }
+
+    /**
+     * Durably records a new job. Returns only after the line has been forced to disk.
+     *
+     * @return the job's sequence number
+     */
+    public synchronized long append(CheckoutFulfillment job) throws IOException {
+        long seq = nextSeq++;
+        write(new Line(OP_ENQUEUE, seq, job), true);
+        pending.put(seq, job);
+        return seq;
+    }
+
+    /**
+     * Marks a job as finished so it is not replayed.
+     */
+    public synchronized void complete(long seq) {
+        if (pending.remove(seq) == null) {
+            return;
+        }
+        try {
+            write(new Line(OP_DONE, seq, null), false);
+            if (++completedSinceCompaction >= compactAfter) {
+                compact();
+            }
+        } catch (IOException e) {
+            // worst case the job is replayed after a restart; fulfillment is idempotent
+            log.warn("Failed to mark webhook job {} as done in journal", seq, e);
+        }
+    }
+
+    /**
+     * Moves a pending job to the dead-letter file (forced to disk) and marks it as finished.
+     *
+     * @throws IOException if the dead letter could not be written; the job then stays pending
+     */
+    public synchronized void deadLetter(long seq, String error) throws IOException {
+        CheckoutFulfillment job = pending.get(seq);
+        if (job == null) {
+            return;
+        }
+        try (FileChannel out = FileChannel.open(dir.resolve(DEAD_LETTER_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            write(out, new DeadLetter(job, error, Instant.now().toString()), true);
+        }
+        deadLetters++;
+        complete(seq);
+    }
+
+    /** Jobs currently in the dead-letter file. */
+    public synchronized int deadLetterCount() {
+        return deadLetters;
+    }
+
+    /**
+     * Enqueues every dead-lettered job again (as new journal entries) and empties the
+     * dead-letter file.
+     *
+     * @return the re-enqueued jobs, keyed by their new sequence numbers
+     */
+    public synchronized Map<Long, CheckoutFulfillment> replayDeadLetters() throws IOException {
+        Map<Long, CheckoutFulfillment> replayed = new LinkedHashMap<>();
+        for (CheckoutFulfillment job : readDeadLetters()) {
+            long seq = nextSeq++;
+            write(new Line(OP_ENQUEUE, seq, job), false);
+            pending.put(seq, job);
+            replayed.put(seq, job);
+        }
+        if (!replayed.isEmpty()) {
+            // journaled before the dead letters go; a crash in between only replays them twice
+            channel.force(false);
+        }
+        Files.deleteIfExists(dir.resolve(DEAD_LETTER_FILE));
+        deadLetters = 0;
+        return replayed;
+    }
+
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close webhook journal", e);
+            }
+        }
+    }
+
+    private void write(Line line, boolean force) throws IOException {
+        write(channel, line, force);
+    }
+
+    private void write(FileChannel target, Object line, boolean force) throws IOException {
+        byte[] bytes = (objectMapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        if (force) {
+            target.force(false);
+        }
+    }
+
+    private List<CheckoutFulfillment> readDeadLetters() throws IOException {
+        Path file = dir.resolve(DEAD_LETTER_FILE);
+        List<CheckoutFulfillment> jobs = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return jobs;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String raw;
+            while ((raw = reader.readLine()) != null) {
+                if (raw.isBlank()) continue;
+                try {
+                    jobs.add(objectMapper.readValue(raw, DeadLetter.class).job());
+                } catch (IOException e) {
+                    // a torn line from a crash mid-write: its job was still pending in the journal
+                    log.warn("Skipping unreadable webhook dead letter: {}", e.getMessage());
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /** Rewrites the journal with only the pending jobs and reopens it for appending. */
+    private void compact() throws IOException {
+        Path file = dir.resolve(JOURNAL_FILE);
+        Path temp = dir.resolve(JOURNAL_FILE + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<Long, CheckoutFulfillment> entry : pending.entrySet()) {
+                    write(out, new Line(OP_ENQUEUE, entry.getKey(), entry.getValue()), false);
+                }
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            completedSinceCompaction = 0;
+        } finally {
+            // whether or not the rewrite worked, appends go to whatever file is now in place
+            close();
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+}
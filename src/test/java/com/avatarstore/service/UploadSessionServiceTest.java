@@ -0,0 +1,157 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.UploadSessionRequest;
+import com.avatarstore.dto.UploadSessionStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadSessionServiceTest {
+
+    private static final UUID OWNER = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    private UploadSessionService service;
+
+    @BeforeEach
+    void createService() {
+        // completion is refused before the storage service is reached, so none is needed
+        service = new UploadSessionService(null, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "dir", dir);
+        ReflectionTestUtils.setField(service, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "maxSessions", 10);
+        ReflectionTestUtils.setField(service, "maxSessionsPerUser", 10);
+        ReflectionTestUtils.setField(service, "maxStagedSize", DataSize.ofMegabytes(10));
+        ReflectionTestUtils.setField(service, "sessionTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(service, "bufferSize", 4);
+        service.init();
+    }
+
+    @Test
+    void chunkThatDoesNotFitIsRejectedBeforeWriting() throws Exception {
+        String id = create(10);
+
+        assertThatThrownBy(() -> service.writeChunk(id, OWNER, 4, 7, new ByteArrayInputStream(new byte[7])))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.writeChunk(id, OWNER, 0, -1, new ByteArrayInputStream(new byte[1])))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(service.getStatus(id, OWNER).received()).isZero();
+    }
+
+    @Test
+    void chunkLongerThanItsLengthIsNotRecorded() throws Exception {
+        String id = create(10);
+
+        assertThatThrownBy(() -> service.writeChunk(id, OWNER, 0, 4, new ByteArrayInputStream(bytes(6))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(service.getStatus(id, OWNER).received()).isZero();
+    }
+
+    @Test
+    void completeIsRefusedWhileAChunkIsBeingWritten() throws Exception {
+        String id = create(8);
+        service.writeChunk(id, OWNER, 0, 8, new ByteArrayInputStream(bytes(8)));
+
+        BlockingStream resend = new BlockingStream(bytes(4));
+        CompletableFuture<UploadSessionStatus> write = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.writeChunk(id, OWNER, 0, 4, resend);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThat(resend.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> service.complete(id, OWNER, "0".repeat(64)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("still being written");
+
+        resend.release.countDown();
+        assertThat(write.get(5, TimeUnit.SECONDS).received()).isEqualTo(8);
+    }
+
+    @Test
+    void chunkFinishingAfterAbortLeavesNoSessionBehind() throws Exception {
+        String id = create(8);
+
+        BlockingStream chunk = new BlockingStream(bytes(4));
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+            try {
+                service.writeChunk(id, OWNER, 0, 4, chunk);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThat(chunk.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        service.abort(id, OWNER);
+        chunk.release.countDown();
+        write.get(5, TimeUnit.SECONDS);
+
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private String create(long size) throws Exception {
+        return service.create(new UploadSessionRequest("bundles/test.zip", null, size, null, null), OWNER).uploadId();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i + 1);
+        }
+        return bytes;
+    }
+
+    /** Hands out its bytes only after {@link #release} is counted down. */
+    private static final class BlockingStream extends InputStream {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final InputStream bytes;
+
+        BlockingStream(byte[] bytes) {
+            this.bytes = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return bytes.read(buffer, offset, length);
+        }
+    }
+}
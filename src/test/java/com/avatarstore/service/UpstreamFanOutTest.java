@@ -0,0 +1,85 @@
+package com.avatarstore.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamFanOutTest {
+
+    private UpstreamFanOut fanOut;
+
+    @BeforeEach
+    void setUp() {
+        fanOut = new UpstreamFanOut(new StandardEnvironment());
+        ReflectionTestUtils.setField(fanOut, "enabled", true);
+        ReflectionTestUtils.setField(fanOut, "maxThreads", 2);
+        ReflectionTestUtils.setField(fanOut, "batchSize", 100);
+        fanOut.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.shutdown();
+    }
+
+    @Test
+    void returnsResultsInTaskOrder() {
+        List<Integer> results = fanOut.all(List.<Supplier<Integer>>of(() -> 1, () -> 2, () -> 3));
+
+        assertThat(results).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void firstFailureInterruptsRunningTasksAndSkipsQueuedOnes() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        AtomicBoolean queuedTaskRan = new AtomicBoolean();
+        Supplier<String> blocking = () -> {
+            running.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "late";
+        };
+
+        // two pool threads: the blocking tasks take both, so the third waits in the queue
+        assertThatThrownBy(() -> fanOut.all(List.<Supplier<String>>of(
+                () -> {
+                    awaitQuietly(running);
+                    throw new IllegalStateException("boom");
+                },
+                blocking,
+                blocking,
+                () -> {
+                    queuedTaskRan.set(true);
+                    return "queued";
+                })))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+        assertThat(queuedTaskRan).isFalse();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.avatarstore.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookDedupStoreTest {
+
+    private static final String STORE_FILE = "webhook-dedup.tsv";
+
+    @TempDir
+    Path dir;
+
+    private WebhookDedupStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void secondClaimIsRejectedUntilReleased() {
+        store = newStore(10000);
+
+        assertThat(store.claim("cs_1")).isTrue();
+        assertThat(store.claim("cs_1")).isFalse();
+        assertThat(store.claim("cs_2")).isTrue();
+
+        store.release("cs_1");
+        assertThat(store.claim("cs_1")).isTrue();
+    }
+
+    @Test
+    void unconfirmedClaimIsNotPersisted() {
+        store = newStore(10000);
+        assertThat(store.claim("cs_1")).isTrue();
+        store.close();
+
+        // e.g. a crash before the job was journaled: the redelivery must be processed
+        store = newStore(10000);
+        assertThat(store.claim("cs_1")).isTrue();
+    }
+
+    @Test
+    void confirmedClaimSurvivesRestart() {
+        store = newStore(10000);
+        assertThat(store.claim("cs_1")).isTrue();
+        store.confirm("cs_1");
+        store.confirm("cs_2");
+        store.close();
+
+        store = newStore(10000);
+        assertThat(store.claim("cs_1")).isFalse();
+        assertThat(store.claim("cs_2")).isFalse();
+    }
+
+    @Test
+    void releaseAfterConfirmSurvivesRestart() {
+        store = newStore(10000);
+        store.claim("cs_1");
+        store.confirm("cs_1");
+        store.release("cs_1");
+        store.close();
+
+        store = newStore(10000);
+        assertThat(store.claim("cs_1")).isTrue();
+    }
+
+    @Test
+    void compactionKeepsOnlyConfirmedClaims() throws IOException {
+        store = newStore(2);
+        store.claim("cs_1");
+        store.confirm("cs_1");
+        store.claim("cs_2");
+        store.claim("cs_3");
+        store.confirm("cs_3");
+
+        assertThat(Files.readAllLines(dir.resolve(STORE_FILE)))
+                .hasSize(2)
+                .noneMatch(line -> line.startsWith("cs_2"));
+    }
+
+    @Test
+    void failedCompactionLeavesStoreWritable() throws IOException {
+        store = newStore(1);
+        // the temp file cannot be created, so the rewrite fails
+        Files.createDirectory(dir.resolve(STORE_FILE + ".tmp"));
+        store.claim("cs_1");
+        store.confirm("cs_1");
+        store.claim("cs_2");
+        store.confirm("cs_2");
+        store.close();
+
+        Files.delete(dir.resolve(STORE_FILE + ".tmp"));
+        store = newStore(1);
+        assertThat(store.claim("cs_1")).isFalse();
+        assertThat(store.claim("cs_2")).isFalse();
+    }
+
+    private WebhookDedupStore newStore(int compactAfter) {
+        WebhookDedupStore store = new WebhookDedupStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "ttl", Duration.ofDays(7));
+        ReflectionTestUtils.setField(store, "dir", dir);
+        ReflectionTestUtils.setField(store, "compactAfter", compactAfter);
+        store.init();
+        return store;
+    }
+}
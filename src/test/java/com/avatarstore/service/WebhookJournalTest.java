@@ -0,0 +1,143 @@
+package com.avatarstore.service;
+
+import com.avatarstore.dto.CheckoutFulfillment;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookJournalTest {
+
+    private static final String JOURNAL_FILE = "webhook-journal.jsonl";
+
+    @TempDir
+    Path dir;
+
+    private WebhookJournal journal;
+
+    @AfterEach
+    void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replaysOnlyJobsThatWereNotCompleted() throws IOException {
+        journal = newJournal(1000);
+        journal.open();
+        long first = journal.append(job("cs_1"));
+        long second = journal.append(job("cs_2"));
+        journal.complete(first);
+        journal.close();
+
+        journal = newJournal(1000);
+        Map<Long, CheckoutFulfillment> recovered = journal.open();
+
+        assertThat(recovered).containsOnlyKeys(second);
+        assertThat(recovered.get(second).sessionId()).isEqualTo("cs_2");
+    }
+
+    @Test
+    void replaySkipsTornFinalLineAndKeepsAppending() throws IOException {
+        journal = newJournal(1000);
+        journal.open();
+        long first = journal.append(job("cs_1"));
+        journal.close();
+        // a crash in the middle of writing the next line
+        Files.writeString(dir.resolve(JOURNAL_FILE), "{\"op\":\"enqueue\",\"seq\":2,\"job\":{\"sessionId\":",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = newJournal(1000);
+        assertThat(journal.open()).containsOnlyKeys(first);
+        long next = journal.append(job("cs_2"));
+        journal.close();
+
+        assertThat(next).isGreaterThan(first);
+        journal = newJournal(1000);
+        assertThat(journal.open()).containsOnlyKeys(first, next);
+    }
+
+    @Test
+    void compactionRewritesOnlyPendingJobs() throws IOException {
+        journal = newJournal(2);
+        journal.open();
+        long first = journal.append(job("cs_1"));
+        long second = journal.append(job("cs_2"));
+        long third = journal.append(job("cs_3"));
+        journal.complete(first);
+        journal.complete(second);
+
+        List<String> lines = Files.readAllLines(dir.resolve(JOURNAL_FILE), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("cs_3");
+
+        long fourth = journal.append(job("cs_4"));
+        journal.close();
+        journal = newJournal(2);
+        assertThat(journal.open()).containsOnlyKeys(third, fourth);
+    }
+
+    @Test
+    void failedCompactionLeavesJournalWritable() throws IOException {
+        journal = newJournal(1);
+        journal.open();
+        long first = journal.append(job("cs_1"));
+        long second = journal.append(job("cs_2"));
+        // the temp file cannot be created, so the rewrite fails
+        Files.createDirectory(dir.resolve(JOURNAL_FILE + ".tmp"));
+        journal.complete(first);
+
+        long third = journal.append(job("cs_3"));
+        journal.close();
+
+        Files.delete(dir.resolve(JOURNAL_FILE + ".tmp"));
+        journal = newJournal(1);
+        assertThat(journal.open()).containsOnlyKeys(second, third);
+    }
+
+    @Test
+    void deadLettersAreKeptUntilReplayed() throws IOException {
+        journal = newJournal(1000);
+        journal.open();
+        long first = journal.append(job("cs_1"));
+        journal.deadLetter(first, "Avatar version not found: 1");
+        journal.close();
+
+        journal = newJournal(1000);
+        assertThat(journal.open()).isEmpty();
+        assertThat(journal.deadLetterCount()).isEqualTo(1);
+
+        Map<Long, CheckoutFulfillment> replayed = journal.replayDeadLetters();
+        assertThat(replayed.values()).extracting(CheckoutFulfillment::sessionId).containsExactly("cs_1");
+        assertThat(journal.deadLetterCount()).isZero();
+        journal.close();
+
+        journal = newJournal(1000);
+        assertThat(journal.open()).containsOnlyKeys(replayed.keySet());
+        assertThat(journal.deadLetterCount()).isZero();
+    }
+
+    private WebhookJournal newJournal(int compactAfter) {
+        WebhookJournal journal = new WebhookJournal(new ObjectMapper());
+        ReflectionTestUtils.setField(journal, "dir", dir);
+        ReflectionTestUtils.setField(journal, "compactAfter", compactAfter);
+        return journal;
+    }
+
+    private static CheckoutFulfillment job(String sessionId) {
+        return new CheckoutFulfillment("evt_" + sessionId, sessionId, UUID.randomUUID(), List.of(1L, 2L));
+    }
+}